@@ -1,8 +1,11 @@
 package cz.ehp.pex;
 
+import cz.ehp.pex.aggregators.Pipeline;
 import cz.ehp.pex.events.ImageDataEvent;
 import cz.ehp.pex.events.ImageResultEvent;
 import cz.ehp.pex.events.UrlEvent;
+import cz.ehp.pex.output.OutputFormat;
+import cz.ehp.pex.output.OutputSink;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -19,37 +22,116 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 public class Application {
     private static final Logger log = LoggerFactory.getLogger(Application.class);
-    private static final int COLORS = 3;
+    private static final int HASH_DISTANCE = 4;
+    private static final int COLOR_DISTANCE = 16;
+    private static final String USAGE = "Run again with input and output file and optional index file as arguments.";
 
     private final CloseableHttpClient httpclient;
+    private final PerceptualIndex index;
+    private final Pipeline pipeline;
+    private final OutputFormat format;
+
+    private final LongAdder hashHits = new LongAdder();
+    private final LongAdder hashMisses = new LongAdder();
+    private final LongAdder missNanos = new LongAdder();
+    private final LongAdder indexNanos = new LongAdder();
 
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.out.println("Run again with input and output file as arguments.");
+        final List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        final String spec;
+        final String formatName;
+        final String distances;
+        try {
+            spec = removeOption(arguments, "-a", Pipeline.DEFAULT_SPEC);
+            formatName = removeOption(arguments, "-f", "csv");
+            distances = removeOption(arguments, "-d", null);
+        } catch (final IllegalArgumentException e) {
+            System.out.println(e.getMessage() + ". " + USAGE);
             return;
         }
 
-        final Path inputFile = Paths.get(args[0]);
-        final Path outputFile = Paths.get(args[1]);
+        if (arguments.size() != 2 && arguments.size() != 3) {
+            System.out.println(USAGE);
+            return;
+        }
 
-        new Application(createHttpClient()).run(inputFile, outputFile);
+        final Pipeline pipeline;
+        try {
+            pipeline = Pipeline.parse(spec);
+        } catch (final IllegalArgumentException e) {
+            System.out.println("Invalid aggregators " + spec + ": " + e.getMessage());
+            return;
+        }
+
+        final OutputFormat format;
+        try {
+            format = OutputFormat.valueOf(formatName.toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            System.out.println("Invalid output format " + formatName + ", use csv or binary.");
+            return;
+        }
+
+        final Path inputFile = Paths.get(arguments.get(0));
+        final Path outputFile = Paths.get(arguments.get(1));
+
+        // perceptual deduplication is enabled only by index file or explicit distances
+        PerceptualIndex index = null;
+        if (distances != null || arguments.size() == 3) {
+            try {
+                final String[] parts = distances == null ? new String[0] : distances.split(":", 2);
+                final int hashDistance = parts.length > 0 ? Integer.parseInt(parts[0]) : HASH_DISTANCE;
+                final int colorDistance = parts.length > 1 ? Integer.parseInt(parts[1]) : COLOR_DISTANCE;
+                index = arguments.size() == 3
+                        ? PerceptualIndex.open(Paths.get(arguments.get(2)), hashDistance, colorDistance, pipeline.getSpec())
+                        : new PerceptualIndex(hashDistance, colorDistance);
+            } catch (final IllegalArgumentException e) {
+                System.out.println("Invalid distances " + distances + ": " + e.getMessage());
+                return;
+            } catch (final IOException e) {
+                log.error("Index file IO exception", e);
+                System.out.println("Cannot open index file: " + e.getMessage());
+                return;
+            }
+        }
+
+        new Application(createHttpClient(), index, pipeline, format).run(inputFile, outputFile);
     }
 
-    private static CloseableHttpClient createHttpClient() {
+    /**
+     *
+     * @param arguments Command line arguments, the option and its value are removed
+     * @param name Option name
+     * @param defaultValue Value used when the option is not present
+     * @return Option value
+     * @throws IllegalArgumentException Option is present without value
+     */
+    static String removeOption(final List<String> arguments, final String name, final String defaultValue) {
+        final int option = arguments.indexOf(name);
+        if (option < 0) {
+            return defaultValue;
+        }
+        if (option + 1 >= arguments.size()) {
+            throw new IllegalArgumentException("Option " + name + " requires a value");
+        }
+        final String value = arguments.remove(option + 1);
+        arguments.remove(option);
+        return value;
+    }
+
+    protected static CloseableHttpClient createHttpClient() {
         final PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
         cm.setMaxTotal(100);
 
@@ -59,25 +141,38 @@ public class Application {
     }
 
     public Application(final CloseableHttpClient httpclient) {
+        this(httpclient, null, Pipeline.parse(Pipeline.DEFAULT_SPEC), OutputFormat.CSV);
+    }
+
+    /**
+     *
+     * @param httpclient HTTP client
+     * @param index Index of already processed images, null disables perceptual deduplication
+     * @param pipeline Aggregators computed for each image
+     * @param format Output format
+     */
+    public Application(final CloseableHttpClient httpclient, final PerceptualIndex index, final Pipeline pipeline,
+                       final OutputFormat format) {
         this.httpclient = httpclient;
+        this.index = index;
+        this.pipeline = pipeline;
+        this.format = format;
     }
 
     public void run(final Path inputFile, final Path outputFile) {
         try (final BufferedReader br = Files.newBufferedReader(inputFile);
-             final BufferedWriter bw = Files.newBufferedWriter(outputFile)) {
+             final OutputSink sink = format.open(outputFile)) {
             createReader(br)
                     .parallel()
                     .runOn(Schedulers.parallel())
                     .map(this::loadImage)
                     .filter(ImageDataEvent::isNotEmpty)
                     .map(this::processImage)
-                    .map(this::convertEvent)
                     .sequential()
                     .publishOn(Schedulers.single())
-                    .doOnNext(line -> {
+                    .doOnNext(event -> {
                         try {
-                            bw.write(line);
-                            bw.flush();
+                            sink.write(event);
                         } catch (final IOException e) {
                             throw Exceptions.propagate(e);
                         }
@@ -95,9 +190,32 @@ public class Application {
                 // ignore this exception
                 log.warn("HTTP client close exception", e);
             }
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (final IOException e) {
+                    // ignore this exception
+                    log.warn("Index close exception", e);
+                }
+                logSummary();
+            }
         }
     }
 
+    private void logSummary() {
+        final long hits = hashHits.sum();
+        final long misses = hashMisses.sum();
+        final long total = hits + misses;
+        // time saved is estimated from average processing time of images which were not found in the index,
+        // hashing and index access of all images is subtracted, so it is negative when deduplication does not pay off
+        final long savedMillis = misses == 0 ? 0 : hits * missNanos.sum() / misses / 1_000_000;
+        final long overheadMillis = indexNanos.sum() / 1_000_000;
+        log.info("Processed {} images, perceptual hash hits {} ({}%), estimated net time saved {} ms"
+                        + " (processing saved {} ms, hashing and index spent {} ms)",
+                total, hits, total == 0 ? 0 : hits * 100 / total, savedMillis - overheadMillis, savedMillis,
+                overheadMillis);
+    }
+
     protected Flux<UrlEvent> createReader(final BufferedReader br) {
         return Flux.generate(new Consumer<SynchronousSink<UrlEvent>>() {
             @Override
@@ -147,38 +265,34 @@ public class Application {
     }
 
     protected ImageResultEvent processImage(final ImageDataEvent data) {
-        final Map<Integer, Integer> colors = new HashMap<>();
-        final BufferedImage image = data.getImage();
-        log.debug("Image at url {} has size {}x{}", data.getUrl(), image.getWidth(), image.getHeight());
-
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                colors.compute(image.getRGB(x + image.getMinX(), y + image.getMinY()) & 0xffffff,
-                        (k, v) -> v == null ? 1 : v + 1);
-            }
+        if (index == null) {
+            return pipeline.process(data.getUrl(), data.getImage());
         }
 
-        final TopKBucket<Map.Entry<Integer, Integer>> topk = new TopKBucket<>(COLORS, new Comparator<Map.Entry<Integer, Integer>>() {
-            @Override
-            public int compare(final Map.Entry<Integer, Integer> o1, final Map.Entry<Integer, Integer> o2) {
-                return -o1.getValue().compareTo(o2.getValue());
-            }
-        });
-        colors.entrySet().forEach(topk::add);
+        final long hashStart = System.nanoTime();
+        final PerceptualHash hash = PerceptualHash.of(data.getImage());
+        final ImageResultEvent cached = index.find(hash);
+        indexNanos.add(System.nanoTime() - hashStart);
+        if (cached != null) {
+            log.debug("Image at url {} matches indexed image with hash {}", data.getUrl(), hash);
+            hashHits.increment();
+            return cached.withUrl(data.getUrl());
+        }
 
-        return new ImageResultEvent(data.getUrl(),
-                topk.getBuffer().stream().mapToInt(Map.Entry::getKey).toArray());
-    }
+        final long start = System.nanoTime();
+        final ImageResultEvent result = pipeline.process(data.getUrl(), data.getImage());
+        missNanos.add(System.nanoTime() - start);
+        hashMisses.increment();
 
-    protected String convertEvent(final ImageResultEvent event) {
-        log.debug("Converting event for url {}", event.getUrl());
-        final StringBuilder sb = new StringBuilder();
-        sb.append(event.getUrl() + ",");
-        sb.append(Arrays.stream(event.getColors())
-                .mapToObj(x -> String.format("%06X", x))
-                .collect(Collectors.joining(",")));
-        sb.append("\n");
+        final long putStart = System.nanoTime();
+        try {
+            index.put(hash, result);
+        } catch (final IOException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            indexNanos.add(System.nanoTime() - putStart);
+        }
 
-        return sb.toString();
+        return result;
     }
 }
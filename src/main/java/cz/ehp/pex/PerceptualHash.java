@@ -0,0 +1,160 @@
+package cz.ehp.pex;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Perceptual fingerprint of an image - 64 bit difference hash (dHash) and average color of each of its 9x8 cells.
+ * Cell averages are taken from a fixed 8x8 grid of samples per cell, so the cost does not grow with image size,
+ * yet an accent of different color covering a part of a cell changes the cell colors even when the luminance
+ * layout, and so the hash, stays the same.
+ */
+public class PerceptualHash {
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+    private static final int CELL_SAMPLES = 8;
+    static final int CELLS = GRID_WIDTH * GRID_HEIGHT;
+
+    private final long hash;
+    private final int[] colors;
+    private final long pixels;
+
+    /**
+     *
+     * @param hash Difference hash
+     * @param colors Average RGB color of each of 9x8 cells, row by row
+     * @param pixels Number of pixels of the image
+     */
+    public PerceptualHash(final long hash, final int[] colors, final long pixels) {
+        if (colors.length != CELLS) {
+            throw new IllegalArgumentException("Expected " + CELLS + " cell colors");
+        }
+        this.hash = hash;
+        this.colors = colors;
+        this.pixels = pixels;
+    }
+
+    /**
+     *
+     * @param image Source image
+     * @return Fingerprint computed from a 9x8 grid of cells averaged from 8x8 samples each
+     */
+    public static PerceptualHash of(final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] xs = samples(width, GRID_WIDTH);
+        final int[] ys = samples(height, GRID_HEIGHT);
+        final double[] luminance = new double[CELLS];
+        final int[] colors = new int[CELLS];
+
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            for (int gx = 0; gx < GRID_WIDTH; gx++) {
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                for (int sy = 0; sy < CELL_SAMPLES; sy++) {
+                    final int y = image.getMinY() + ys[gy * CELL_SAMPLES + sy];
+                    for (int sx = 0; sx < CELL_SAMPLES; sx++) {
+                        final int rgb = image.getRGB(image.getMinX() + xs[gx * CELL_SAMPLES + sx], y);
+                        red += (rgb >> 16) & 0xff;
+                        green += (rgb >> 8) & 0xff;
+                        blue += rgb & 0xff;
+                    }
+                }
+
+                final int samples = CELL_SAMPLES * CELL_SAMPLES;
+                luminance[gy * GRID_WIDTH + gx] = (0.299 * red + 0.587 * green + 0.114 * blue) / samples;
+                colors[gy * GRID_WIDTH + gx] = red / samples << 16 | green / samples << 8 | blue / samples;
+            }
+        }
+
+        // each bit tells whether luminance grows from left to right neighbour
+        long hash = 0;
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            for (int gx = 0; gx < GRID_WIDTH - 1; gx++) {
+                hash <<= 1;
+                if (luminance[gy * GRID_WIDTH + gx] < luminance[gy * GRID_WIDTH + gx + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+
+        return new PerceptualHash(hash, colors, (long) width * height);
+    }
+
+    /**
+     *
+     * @param size Image width or height
+     * @param cells Number of cells along the same axis
+     * @return Sample positions, CELL_SAMPLES evenly spread positions in the middle of sub-cells of each cell
+     */
+    private static int[] samples(final int size, final int cells) {
+        final int[] positions = new int[cells * CELL_SAMPLES];
+        for (int i = 0; i < positions.length; i++) {
+            final long position = (long) size * (2 * i + 1) / (2L * positions.length);
+            positions[i] = (int) Math.min(position, size - 1);
+        }
+        return positions;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public int[] getColors() {
+        return colors;
+    }
+
+    /**
+     *
+     * @return Number of pixels of the image, it is not compared by distance
+     */
+    public long getPixels() {
+        return pixels;
+    }
+
+    /**
+     *
+     * @param other Other fingerprint
+     * @return Number of different bits between both hashes
+     */
+    public int distance(final PerceptualHash other) {
+        return Long.bitCount(hash ^ other.hash);
+    }
+
+    /**
+     *
+     * @param other Other fingerprint
+     * @return Maximal difference of a single channel between average colors of the same cell
+     */
+    public int colorDistance(final PerceptualHash other) {
+        int max = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                max = Math.max(max, Math.abs(((colors[cell] >> shift) & 0xff) - ((other.colors[cell] >> shift) & 0xff)));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PerceptualHash that = (PerceptualHash) o;
+        return hash == that.hash && pixels == that.pixels && Arrays.equals(colors, that.colors);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Long.hashCode(hash) + Long.hashCode(pixels)) + Arrays.hashCode(colors);
+    }
+
+    @Override
+    public String toString() {
+        return "PerceptualHash{" +
+                "hash=" + String.format("%016X", hash) +
+                ", pixels=" + pixels +
+                '}';
+    }
+}
@@ -0,0 +1,303 @@
+package cz.ehp.pex;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of already processed images keyed by perceptual hash. Lookup tolerates small Hamming distance,
+ * so re-encoded or re-scaled copies of the same picture are found too.
+ * Entries are kept in memory and optionally appended to a file, which is loaded again on next run.
+ * The file is bound to the aggregator specification of the run, a file created for other aggregators is rejected.
+ */
+public class PerceptualIndex implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(PerceptualIndex.class);
+
+    private static final int MAGIC = 0x50455849; // PEXI
+    private static final int VERSION = 4;
+    // hash is split into 8 bands by 8 bits, two hashes within distance 7 share at least one band
+    private static final int BANDS = 8;
+    private static final int BAND_BITS = 8;
+
+    private final int maxDistance;
+    private final int maxColorDistance;
+    private final Map<Integer, List<Entry>> bands = new HashMap<>();
+    private int size;
+    private DataOutputStream output;
+
+    /**
+     *
+     * @param maxDistance Maximal Hamming distance of matching hashes, lower than 8
+     * @param maxColorDistance Maximal difference of a single channel of any cell color of matching images
+     */
+    public PerceptualIndex(final int maxDistance, final int maxColorDistance) {
+        if (maxDistance < 0 || maxDistance >= BANDS) {
+            throw new IllegalArgumentException("Max distance must be between 0 and " + (BANDS - 1));
+        }
+        if (maxColorDistance < 0 || maxColorDistance > 255) {
+            throw new IllegalArgumentException("Max color distance must be between 0 and 255");
+        }
+        this.maxDistance = maxDistance;
+        this.maxColorDistance = maxColorDistance;
+    }
+
+    /**
+     *
+     * @param file Index file, created if it does not exist
+     * @param maxDistance Maximal Hamming distance of matching hashes, lower than 8
+     * @param maxColorDistance Maximal difference of a single channel of any cell color of matching images
+     * @param spec Aggregator specification of results stored in the index
+     * @return Index with entries loaded from file, new entries are appended to the file
+     * @throws IOException File IO exception or file created by another version or for other aggregators
+     */
+    public static PerceptualIndex open(final Path file, final int maxDistance, final int maxColorDistance,
+                                       final String spec) throws IOException {
+        final PerceptualIndex index = new PerceptualIndex(maxDistance, maxColorDistance);
+        long validLength = 0;
+
+        if (Files.exists(file) && Files.size(file) > 0) {
+            try (final CountingInputStream cis = new CountingInputStream(Files.newInputStream(file));
+                 final DataInputStream dis = new DataInputStream(cis)) {
+                if (dis.readInt() != MAGIC) {
+                    throw new IOException("Unsupported perceptual index file " + file);
+                }
+                final int version = dis.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Perceptual index file " + file + " has unsupported version " + version
+                            + ", use another index file");
+                }
+                final String fileSpec = dis.readUTF();
+                if (!spec.equals(fileSpec)) {
+                    throw new IOException("Perceptual index file " + file + " was created for aggregators " + fileSpec
+                            + ", use another index file for aggregators " + spec);
+                }
+                validLength = cis.getCount();
+                while (true) {
+                    final long hash = dis.readLong();
+                    final int[] colors = new int[PerceptualHash.CELLS];
+                    for (int i = 0; i < colors.length; i++) {
+                        colors[i] = dis.readInt();
+                    }
+                    index.add(new PerceptualHash(hash, colors, dis.readLong()), readResult(dis));
+                    validLength = cis.getCount();
+                }
+            } catch (final EOFException e) {
+                if (validLength == 0) {
+                    throw new IOException("Unsupported perceptual index file " + file, e);
+                }
+                // last record could be incomplete when previous run was killed, it is truncated below
+                log.debug("End of perceptual index file {}", file);
+            }
+        }
+
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        index.output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        if (validLength == 0) {
+            index.output.writeInt(MAGIC);
+            index.output.writeInt(VERSION);
+            index.output.writeUTF(spec);
+        }
+
+        log.info("Loaded {} entries from perceptual index {}", index.size, file);
+        return index;
+    }
+
+    /**
+     *
+     * @param hash Perceptual hash of image
+     * @return Result of the closest matching image with pixel counts rescaled to the size of looked up image,
+     * or null when there is no match
+     */
+    public synchronized ImageResultEvent find(final PerceptualHash hash) {
+        Entry best = null;
+        int bestDistance = Integer.MAX_VALUE;
+
+        for (int band = 0; band < BANDS; band++) {
+            final List<Entry> candidates = bands.get(bandKey(hash, band));
+            if (candidates == null) {
+                continue;
+            }
+
+            for (final Entry candidate : candidates) {
+                final int distance = candidate.hash.distance(hash);
+                if (distance <= maxDistance && distance < bestDistance
+                        && candidate.hash.colorDistance(hash) <= maxColorDistance) {
+                    best = candidate;
+                    bestDistance = distance;
+                }
+            }
+        }
+
+        return best == null ? null : best.result.withUrl(null, best.hash.getPixels(), hash.getPixels());
+    }
+
+    /**
+     *
+     * @param hash Perceptual hash of image
+     * @param result Result computed for image
+     * @throws IOException File IO exception
+     */
+    public synchronized void put(final PerceptualHash hash, final ImageResultEvent result) throws IOException {
+        add(hash, result);
+
+        if (output != null) {
+            output.writeLong(hash.getHash());
+            for (final int color : hash.getColors()) {
+                output.writeInt(color);
+            }
+            output.writeLong(hash.getPixels());
+            writeResult(output, result);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (output != null) {
+            output.close();
+            output = null;
+        }
+    }
+
+    private void add(final PerceptualHash hash, final ImageResultEvent result) {
+        final Entry entry = new Entry(hash, result);
+        for (int band = 0; band < BANDS; band++) {
+            bands.computeIfAbsent(bandKey(hash, band), k -> new ArrayList<>()).add(entry);
+        }
+        size++;
+    }
+
+    private static int bandKey(final PerceptualHash hash, final int band) {
+        return band << BAND_BITS | (int) ((hash.getHash() >>> (band * BAND_BITS)) & ((1 << BAND_BITS) - 1));
+    }
+
+    private static void writeResult(final DataOutput out, final ImageResultEvent result) throws IOException {
+        writeInts(out, result.getColors());
+        writeInts(out, result.getCounts());
+        writeDoubles(out, result.getMean());
+        writeDoubles(out, result.getVariance());
+        out.writeLong(result.getDistinctColors());
+        writeInts(out, result.getLuminanceHistogram());
+    }
+
+    private static ImageResultEvent readResult(final DataInput in) throws IOException {
+        // url is not stored, results are always returned with url of the looked up image
+        final int[] colors = readInts(in);
+        return ImageResultEvent.builder(null)
+                .colors(colors, readInts(in))
+                .channels(readDoubles(in), readDoubles(in))
+                .distinctColors(in.readLong())
+                .luminanceHistogram(readInts(in))
+                .build();
+    }
+
+    private static void writeInts(final DataOutput out, final int[] values) throws IOException {
+        out.writeInt(values == null ? -1 : values.length);
+        if (values != null) {
+            for (final int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private static int[] readInts(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static void writeDoubles(final DataOutput out, final double[] values) throws IOException {
+        out.writeInt(values == null ? -1 : values.length);
+        if (values != null) {
+            for (final double value : values) {
+                out.writeDouble(value);
+            }
+        }
+    }
+
+    private static double[] readDoubles(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    private static class Entry {
+        private final PerceptualHash hash;
+        private final ImageResultEvent result;
+
+        private Entry(final PerceptualHash hash, final ImageResultEvent result) {
+            this.hash = hash;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Buffered input stream which counts consumed bytes, so the end of last complete record is known.
+     */
+    private static class CountingInputStream extends BufferedInputStream {
+        private long count;
+
+        private CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        private long getCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package cz.ehp.pex.aggregators;
+
+import cz.ehp.pex.events.ImageResultEvent;
+
+/**
+ * Mutable state of an {@link Aggregator} for a single image. Not thread safe.
+ */
+public interface Accumulator {
+
+    /**
+     *
+     * @param pixels Row of RGB pixels without alpha channel
+     * @param length Number of valid pixels in row
+     */
+    void add(int[] pixels, int length);
+
+    /**
+     *
+     * @param result Builder to be filled with aggregated values
+     */
+    void complete(ImageResultEvent.Builder result);
+}
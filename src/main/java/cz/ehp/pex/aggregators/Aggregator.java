@@ -0,0 +1,19 @@
+package cz.ehp.pex.aggregators;
+
+/**
+ * Primitive image aggregate computed in the fused pixel pass of {@link Pipeline}.
+ */
+public interface Aggregator {
+
+    /**
+     *
+     * @return Aggregator specification as used on command line, e.g. top:3
+     */
+    String getSpec();
+
+    /**
+     *
+     * @return New accumulator for a single image
+     */
+    Accumulator newAccumulator();
+}
@@ -0,0 +1,59 @@
+package cz.ehp.pex.aggregators;
+
+import cz.ehp.pex.events.ImageResultEvent;
+
+/**
+ * Mean and population variance of red, green and blue channel.
+ */
+public class ChannelStatsAggregator implements Aggregator {
+
+    @Override
+    public String getSpec() {
+        return "stats";
+    }
+
+    @Override
+    public Accumulator newAccumulator() {
+        return new Accumulator() {
+            private final long[] sums = new long[3];
+            private final long[] squares = new long[3];
+            private long pixels;
+
+            @Override
+            public void add(final int[] row, final int length) {
+                long r = 0, g = 0, b = 0, rr = 0, gg = 0, bb = 0;
+                for (int i = 0; i < length; i++) {
+                    final int red = (row[i] >> 16) & 0xff;
+                    final int green = (row[i] >> 8) & 0xff;
+                    final int blue = row[i] & 0xff;
+                    r += red;
+                    g += green;
+                    b += blue;
+                    rr += red * red;
+                    gg += green * green;
+                    bb += blue * blue;
+                }
+                sums[0] += r;
+                sums[1] += g;
+                sums[2] += b;
+                squares[0] += rr;
+                squares[1] += gg;
+                squares[2] += bb;
+                pixels += length;
+            }
+
+            @Override
+            public void complete(final ImageResultEvent.Builder result) {
+                final double[] mean = new double[3];
+                final double[] variance = new double[3];
+                if (pixels > 0) {
+                    for (int i = 0; i < 3; i++) {
+                        mean[i] = (double) sums[i] / pixels;
+                        variance[i] = Math.max(0, (double) squares[i] / pixels - mean[i] * mean[i]);
+                    }
+                }
+                result.channels(mean, variance);
+            }
+        };
+    }
+}
@@ -0,0 +1,88 @@
+package cz.ehp.pex.aggregators;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from 24 bit color to pixel count, without boxing of keys and values.
+ */
+class ColorCounter {
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    ColorCounter() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     *
+     * @param color Color in lower 24 bits
+     */
+    void increment(final int color) {
+        int slot = slot(color);
+        while (true) {
+            final int key = keys[slot];
+            if (key == color) {
+                values[slot]++;
+                return;
+            }
+            if (key == EMPTY) {
+                keys[slot] = color;
+                values[slot] = 1;
+                if (++size > keys.length >> 1) {
+                    grow();
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     *
+     * @param consumer Consumer of all colors with their counts
+     */
+    void forEach(final EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private int slot(final int color) {
+        return (color * 0x9E3779B9 >>> 7) & mask;
+    }
+
+    private void allocate(final int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        final int[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(keys.length << 1);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    interface EntryConsumer {
+        void accept(int color, int count);
+    }
+}
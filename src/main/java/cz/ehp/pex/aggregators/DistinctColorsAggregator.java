@@ -0,0 +1,34 @@
+package cz.ehp.pex.aggregators;
+
+import cz.ehp.pex.events.ImageResultEvent;
+
+/**
+ * Estimate of the number of distinct colors computed by HyperLogLog in constant memory.
+ */
+public class DistinctColorsAggregator implements Aggregator {
+    private static final int PRECISION = 12;
+
+    @Override
+    public String getSpec() {
+        return "distinct";
+    }
+
+    @Override
+    public Accumulator newAccumulator() {
+        return new Accumulator() {
+            private final HyperLogLog hll = new HyperLogLog(PRECISION);
+
+            @Override
+            public void add(final int[] pixels, final int length) {
+                for (int i = 0; i < length; i++) {
+                    hll.add(pixels[i]);
+                }
+            }
+
+            @Override
+            public void complete(final ImageResultEvent.Builder result) {
+                result.distinctColors(hll.estimate());
+            }
+        };
+    }
+}
@@ -0,0 +1,63 @@
+package cz.ehp.pex.aggregators;
+
+/**
+ * HyperLogLog cardinality estimator with 2^precision one byte registers.
+ */
+class HyperLogLog {
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     *
+     * @param precision Number of index bits, standard error is about 1.04 / sqrt(2^precision)
+     */
+    HyperLogLog(final int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    void add(final int value) {
+        final long hash = mix(value);
+        final int index = (int) (hash >>> (64 - precision));
+        // rank of the first set bit in remaining bits, sentinel bit limits the rank
+        final int rank = Long.numberOfLeadingZeros(hash << precision | 1L << (precision - 1)) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    long estimate() {
+        final int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (final byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        final double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        final double estimate = alpha * m * m / sum;
+
+        // linear counting for small cardinalities
+        if (estimate <= 2.5 * m && zeros > 0) {
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    private static long mix(final long value) {
+        // finalizer of MurmurHash3
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,49 @@
+package cz.ehp.pex.aggregators;
+
+import cz.ehp.pex.events.ImageResultEvent;
+
+/**
+ * Histogram of pixel luminance (ITU-R BT.601 weights) split into equally wide bins.
+ */
+public class LuminanceHistogramAggregator implements Aggregator {
+    private final int bins;
+
+    /**
+     *
+     * @param bins Number of bins, divisor of 256
+     */
+    public LuminanceHistogramAggregator(final int bins) {
+        if (bins < 1 || bins > 256 || 256 % bins != 0) {
+            throw new IllegalArgumentException("Number of histogram bins must be a divisor of 256");
+        }
+        this.bins = bins;
+    }
+
+    @Override
+    public String getSpec() {
+        return "histogram:" + bins;
+    }
+
+    @Override
+    public Accumulator newAccumulator() {
+        final int shift = Integer.numberOfTrailingZeros(256 / bins);
+        return new Accumulator() {
+            private final int[] histogram = new int[bins];
+
+            @Override
+            public void add(final int[] pixels, final int length) {
+                for (int i = 0; i < length; i++) {
+                    final int rgb = pixels[i];
+                    // integer weights 77 + 150 + 29 = 256
+                    final int luminance = (77 * ((rgb >> 16) & 0xff) + 150 * ((rgb >> 8) & 0xff) + 29 * (rgb & 0xff)) >> 8;
+                    histogram[luminance >> shift]++;
+                }
+            }
+
+            @Override
+            public void complete(final ImageResultEvent.Builder result) {
+                result.luminanceHistogram(histogram.clone());
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package cz.ehp.pex.aggregators;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Selected aggregators computed together in a single pass over image pixels.
+ */
+public class Pipeline {
+    private static final Logger log = LoggerFactory.getLogger(Pipeline.class);
+
+    public static final String DEFAULT_SPEC = "top:3";
+
+    private final List<Aggregator> aggregators;
+
+    public Pipeline(final List<Aggregator> aggregators) {
+        if (aggregators.isEmpty()) {
+            throw new IllegalArgumentException("At least one aggregator must be selected");
+        }
+        if (aggregators.stream().map(Object::getClass).distinct().count() != aggregators.size()) {
+            throw new IllegalArgumentException("Each aggregator can be selected only once");
+        }
+        this.aggregators = Collections.unmodifiableList(new ArrayList<>(aggregators));
+    }
+
+    /**
+     *
+     * @param spec Comma separated aggregators - top[:k], counts[:k], stats, distinct, histogram[:bins]
+     * @return Pipeline with parsed aggregators
+     */
+    public static Pipeline parse(final String spec) {
+        final List<Aggregator> aggregators = new ArrayList<>();
+        for (final String item : spec.split(",")) {
+            final String[] parts = item.trim().split(":", 2);
+            final String name = parts[0];
+            final String argument = parts.length > 1 ? parts[1] : null;
+
+            switch (name) {
+                case "top":
+                    aggregators.add(new TopColorsAggregator(parseArgument(argument, 3, item), false));
+                    break;
+                case "counts":
+                    aggregators.add(new TopColorsAggregator(parseArgument(argument, 3, item), true));
+                    break;
+                case "stats":
+                    aggregators.add(new ChannelStatsAggregator());
+                    break;
+                case "distinct":
+                    aggregators.add(new DistinctColorsAggregator());
+                    break;
+                case "histogram":
+                    aggregators.add(new LuminanceHistogramAggregator(parseArgument(argument, 16, item)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown aggregator " + item);
+            }
+        }
+        return new Pipeline(aggregators);
+    }
+
+    private static int parseArgument(final String argument, final int defaultValue, final String item) {
+        if (argument == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(argument);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid argument of aggregator " + item, e);
+        }
+    }
+
+    public List<Aggregator> getAggregators() {
+        return aggregators;
+    }
+
+    /**
+     *
+     * @return Normalized specification of all aggregators
+     */
+    public String getSpec() {
+        return aggregators.stream().map(Aggregator::getSpec).collect(Collectors.joining(","));
+    }
+
+    /**
+     *
+     * @param url Image url
+     * @param image Loaded image
+     * @return Values of all aggregators
+     */
+    public ImageResultEvent process(final String url, final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        log.debug("Image at url {} has size {}x{}", url, width, height);
+
+        final Accumulator[] accumulators = new Accumulator[aggregators.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = aggregators.get(i).newAccumulator();
+        }
+
+        // read image row by row, each accumulator runs its own tight loop over the row
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(image.getMinX(), image.getMinY() + y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                row[x] &= 0xffffff;
+            }
+            for (final Accumulator accumulator : accumulators) {
+                accumulator.add(row, width);
+            }
+        }
+
+        final ImageResultEvent.Builder result = ImageResultEvent.builder(url);
+        for (final Accumulator accumulator : accumulators) {
+            accumulator.complete(result);
+        }
+        return result.build();
+    }
+}
@@ -0,0 +1,63 @@
+package cz.ehp.pex.aggregators;
+
+import cz.ehp.pex.TopKBucket;
+import cz.ehp.pex.events.ImageResultEvent;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * K most prevalent colors, optionally with their pixel counts.
+ */
+public class TopColorsAggregator implements Aggregator {
+    private final int k;
+    private final boolean withCounts;
+
+    /**
+     *
+     * @param k Number of colors
+     * @param withCounts Whether pixel counts of colors are part of the result
+     */
+    public TopColorsAggregator(final int k, final boolean withCounts) {
+        if (k < 1 || k > 255) {
+            throw new IllegalArgumentException("Number of top colors must be between 1 and 255");
+        }
+        this.k = k;
+        this.withCounts = withCounts;
+    }
+
+    @Override
+    public String getSpec() {
+        return (withCounts ? "counts:" : "top:") + k;
+    }
+
+    @Override
+    public Accumulator newAccumulator() {
+        return new Accumulator() {
+            private final ColorCounter counter = new ColorCounter();
+
+            @Override
+            public void add(final int[] pixels, final int length) {
+                for (int i = 0; i < length; i++) {
+                    counter.increment(pixels[i]);
+                }
+            }
+
+            @Override
+            public void complete(final ImageResultEvent.Builder result) {
+                // count in upper bits, color in lower 24 bits - ordered by count first
+                final TopKBucket<Long> topk = new TopKBucket<>(k, Comparator.<Long>reverseOrder());
+                counter.forEach((color, count) -> topk.add((long) count << 24 | color));
+
+                final List<Long> buffer = topk.getBuffer();
+                final int[] colors = new int[buffer.size()];
+                final int[] counts = new int[buffer.size()];
+                for (int i = 0; i < buffer.size(); i++) {
+                    colors[i] = (int) (buffer.get(i) & 0xffffff);
+                    counts[i] = (int) (buffer.get(i) >>> 24);
+                }
+                result.colors(colors, withCounts ? counts : null);
+            }
+        };
+    }
+}
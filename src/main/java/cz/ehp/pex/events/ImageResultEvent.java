@@ -4,33 +4,161 @@ import java.util.Arrays;
 import java.util.stream.Collectors;
 
 /**
- * Event class - result from image processing
+ * Event class - result from image processing. Only values of aggregators selected for the run are filled,
+ * the others are null (or -1 for distinct colors).
  */
 public class ImageResultEvent extends UrlEvent {
     private final int[] colors;
+    private final int[] counts;
+    private final double[] mean;
+    private final double[] variance;
+    private final long distinctColors;
+    private final int[] luminanceHistogram;
 
     public ImageResultEvent(final String url, final int[] colors) {
+        this(url, colors, null, null, null, -1, null);
+    }
+
+    private ImageResultEvent(final String url, final int[] colors, final int[] counts, final double[] mean,
+                             final double[] variance, final long distinctColors, final int[] luminanceHistogram) {
         super(url);
         this.colors = colors;
+        this.counts = counts;
+        this.mean = mean;
+        this.variance = variance;
+        this.distinctColors = distinctColors;
+        this.luminanceHistogram = luminanceHistogram;
+    }
+
+    public static Builder builder(final String url) {
+        return new Builder(url);
     }
 
+    /**
+     *
+     * @return Most prevalent colors, most prevalent first
+     */
     public int[] getColors() {
         return colors;
     }
 
+    /**
+     *
+     * @return Pixel counts of most prevalent colors
+     */
+    public int[] getCounts() {
+        return counts;
+    }
+
+    /**
+     *
+     * @return Mean of red, green and blue channel
+     */
+    public double[] getMean() {
+        return mean;
+    }
+
+    /**
+     *
+     * @return Variance of red, green and blue channel
+     */
+    public double[] getVariance() {
+        return variance;
+    }
+
+    /**
+     *
+     * @return Estimated number of distinct colors
+     */
+    public long getDistinctColors() {
+        return distinctColors;
+    }
+
+    /**
+     *
+     * @return Pixel counts of luminance bins, darkest first
+     */
+    public int[] getLuminanceHistogram() {
+        return luminanceHistogram;
+    }
+
+    /**
+     *
+     * @param url Url of new event
+     * @return Event with the same values for another url
+     */
+    public ImageResultEvent withUrl(final String url) {
+        return new ImageResultEvent(url, colors, counts, mean, variance, distinctColors, luminanceHistogram);
+    }
+
+    /**
+     *
+     * @param url Url of new event
+     * @param sourcePixels Number of pixels of the image the values were computed for
+     * @param pixels Number of pixels of the image of new event
+     * @return Event with the same values for another url, pixel counts are rescaled to the size of the new image
+     */
+    public ImageResultEvent withUrl(final String url, final long sourcePixels, final long pixels) {
+        if (sourcePixels == pixels) {
+            return withUrl(url);
+        }
+        final double scale = (double) pixels / sourcePixels;
+        return new ImageResultEvent(url, colors, rescale(counts, scale), mean, variance, distinctColors,
+                rescaleHistogram(luminanceHistogram, scale, pixels));
+    }
+
+    private static int[] rescale(final int[] values, final double scale) {
+        if (values == null) {
+            return null;
+        }
+        final int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (int) Math.round(values[i] * scale);
+        }
+        return result;
+    }
+
+    private static int[] rescaleHistogram(final int[] histogram, final double scale, final long pixels) {
+        final int[] result = rescale(histogram, scale);
+        if (result == null || result.length == 0) {
+            return result;
+        }
+        // rounding error is moved to the largest bin, so bins still add up to all pixels of the image
+        long sum = 0;
+        int largest = 0;
+        for (int i = 0; i < result.length; i++) {
+            sum += result[i];
+            if (result[i] > result[largest]) {
+                largest = i;
+            }
+        }
+        result[largest] += (int) (pixels - sum);
+        return result;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         if (!super.equals(o)) return false;
         ImageResultEvent that = (ImageResultEvent) o;
-        return Arrays.equals(colors, that.colors);
+        return distinctColors == that.distinctColors &&
+                Arrays.equals(colors, that.colors) &&
+                Arrays.equals(counts, that.counts) &&
+                Arrays.equals(mean, that.mean) &&
+                Arrays.equals(variance, that.variance) &&
+                Arrays.equals(luminanceHistogram, that.luminanceHistogram);
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
         result = 31 * result + Arrays.hashCode(colors);
+        result = 31 * result + Arrays.hashCode(counts);
+        result = 31 * result + Arrays.hashCode(mean);
+        result = 31 * result + Arrays.hashCode(variance);
+        result = 31 * result + Long.hashCode(distinctColors);
+        result = 31 * result + Arrays.hashCode(luminanceHistogram);
         return result;
     }
 
@@ -38,9 +166,57 @@ public class ImageResultEvent extends UrlEvent {
     public String toString() {
         return "ImageResultEvent{" +
                 "url='" + getUrl() + '\'' +
-                "colors=" + Arrays.stream(colors)
+                "colors=" + (colors == null ? "null" : Arrays.stream(colors)
                 .mapToObj(x -> String.format("%06X", x))
-                .collect(Collectors.joining(",")) +
+                .collect(Collectors.joining(","))) +
+                ", counts=" + Arrays.toString(counts) +
+                ", mean=" + Arrays.toString(mean) +
+                ", variance=" + Arrays.toString(variance) +
+                ", distinctColors=" + distinctColors +
+                ", luminanceHistogram=" + Arrays.toString(luminanceHistogram) +
                 '}';
     }
+
+    /**
+     * Builder filled by aggregators of a single image.
+     */
+    public static class Builder {
+        private final String url;
+        private int[] colors;
+        private int[] counts;
+        private double[] mean;
+        private double[] variance;
+        private long distinctColors = -1;
+        private int[] luminanceHistogram;
+
+        private Builder(final String url) {
+            this.url = url;
+        }
+
+        public Builder colors(final int[] colors, final int[] counts) {
+            this.colors = colors;
+            this.counts = counts;
+            return this;
+        }
+
+        public Builder channels(final double[] mean, final double[] variance) {
+            this.mean = mean;
+            this.variance = variance;
+            return this;
+        }
+
+        public Builder distinctColors(final long distinctColors) {
+            this.distinctColors = distinctColors;
+            return this;
+        }
+
+        public Builder luminanceHistogram(final int[] luminanceHistogram) {
+            this.luminanceHistogram = luminanceHistogram;
+            return this;
+        }
+
+        public ImageResultEvent build() {
+            return new ImageResultEvent(url, colors, counts, mean, variance, distinctColors, luminanceHistogram);
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package cz.ehp.pex.output;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command line utility converting binary output into CSV.
+ */
+public class BinaryConverter {
+    private static final Logger log = LoggerFactory.getLogger(BinaryConverter.class);
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Run again with binary input and CSV output file as arguments.");
+            return;
+        }
+
+        try {
+            final long records = convert(Paths.get(args[0]), Paths.get(args[1]));
+            log.info("Converted {} records", records);
+        } catch (final IOException e) {
+            log.error("File IO exception", e);
+        }
+    }
+
+    /**
+     *
+     * @param binaryFile File written by {@link BinarySink}
+     * @param csvFile CSV file, overwritten if it exists
+     * @return Number of converted records
+     * @throws IOException File IO exception
+     */
+    public static long convert(final Path binaryFile, final Path csvFile) throws IOException {
+        try (final BinaryReader reader = new BinaryReader(binaryFile);
+             final CsvSink sink = new CsvSink(Files.newBufferedWriter(csvFile))) {
+            for (int block = 0; block < reader.getBlockCount(); block++) {
+                for (final ImageResultEvent event : reader.readBlock(block)) {
+                    sink.write(event);
+                }
+            }
+            return reader.getRecordCount();
+        }
+    }
+}
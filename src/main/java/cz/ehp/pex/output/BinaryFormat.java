@@ -0,0 +1,69 @@
+package cz.ehp.pex.output;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and primitive encoding shared by {@link BinarySink} and {@link BinaryReader}.
+ * <p>
+ * File layout:
+ * <pre>
+ * header  - int magic, int version
+ * blocks  - int compressed length, int raw length, deflated block
+ * footer  - int block count, per block long offset and int record count
+ * trailer - long footer offset, int magic
+ * </pre>
+ * Block is columnar, all records of a block have the same columns:
+ * <pre>
+ * byte columns, varint records
+ * url dictionary - varint size, per entry varint length of UTF-8 prefix shared with previous entry,
+ *                  varint suffix length and suffix bytes
+ * url ids        - varint per record
+ * colors         - varint count per record, packed 24 bit colors
+ * counts         - varint pixel count per color
+ * stats          - 3 means and 3 variances as doubles per record
+ * distinct       - varint per record
+ * histogram      - varint bins per record, varint bin counts
+ * </pre>
+ */
+final class BinaryFormat {
+    static final int MAGIC = 0x50455842; // PEXB
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 8;
+    static final int TRAILER_LENGTH = 12;
+
+    static final int COLORS = 1;
+    static final int STATS = 1 << 1;
+    static final int DISTINCT = 1 << 2;
+    static final int HISTOGRAM = 1 << 3;
+    static final int COUNTS = 1 << 4;
+
+    private BinaryFormat() {
+    }
+
+    static void writeVarLong(final ByteArrayOutputStream out, final long value) {
+        long v = value;
+        while ((v & ~0x7fL) != 0) {
+            out.write((int) (v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static long readVarLong(final ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            final byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    static int readVarInt(final ByteBuffer in) {
+        return (int) readVarLong(in);
+    }
+}
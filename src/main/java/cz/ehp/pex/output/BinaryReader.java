@@ -0,0 +1,249 @@
+package cz.ehp.pex.output;
+
+import cz.ehp.pex.events.ImageResultEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static cz.ehp.pex.output.BinaryFormat.*;
+
+/**
+ * Reader of files written by {@link BinarySink}. Records are accessed block by block or randomly by record number.
+ * Not thread safe.
+ */
+public class BinaryReader implements Closeable {
+    // deflate cannot expand data by more than 1032:1
+    private static final int MAX_INFLATE_RATIO = 1032;
+
+    private final FileChannel channel;
+    private final long footerOffset;
+    private final long[] blockOffsets;
+    // number of records before each block, last item is the total number of records
+    private final long[] blockStarts;
+    private final Inflater inflater = new Inflater();
+
+    private int cachedBlock = -1;
+    private List<ImageResultEvent> cachedRecords;
+
+    public BinaryReader(final Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final ByteBuffer header = read(0, HEADER_LENGTH);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Unsupported binary file " + file);
+            }
+
+            final long footerEnd = channel.size() - TRAILER_LENGTH;
+            if (footerEnd < HEADER_LENGTH + 4) {
+                throw new IOException("Incomplete binary file " + file);
+            }
+            final ByteBuffer trailer = read(footerEnd, TRAILER_LENGTH);
+            footerOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC || footerOffset < HEADER_LENGTH || footerOffset > footerEnd - 4) {
+                throw new IOException("Incomplete binary file " + file);
+            }
+
+            final int blocks = read(footerOffset, 4).getInt();
+            if (blocks < 0 || footerEnd - footerOffset != 4 + blocks * 12L) {
+                throw new IOException("Corrupted footer of binary file " + file);
+            }
+            final ByteBuffer footer = read(footerOffset + 4, blocks * 12);
+            blockOffsets = new long[blocks];
+            blockStarts = new long[blocks + 1];
+            for (int i = 0; i < blocks; i++) {
+                blockOffsets[i] = footer.getLong();
+                final int records = footer.getInt();
+                if (blockOffsets[i] < HEADER_LENGTH || blockOffsets[i] > footerOffset - 8 || records <= 0) {
+                    throw new IOException("Corrupted footer of binary file " + file);
+                }
+                blockStarts[i + 1] = blockStarts[i] + records;
+            }
+        } catch (final IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    public long getRecordCount() {
+        return blockStarts[blockStarts.length - 1];
+    }
+
+    /**
+     *
+     * @param index Record number
+     * @return Record at given position
+     * @throws IOException File IO exception
+     */
+    public ImageResultEvent get(final long index) throws IOException {
+        if (index < 0 || index >= getRecordCount()) {
+            throw new IndexOutOfBoundsException("Record " + index + " out of " + getRecordCount());
+        }
+
+        // blocks are never empty, so block starts are unique
+        int block = Arrays.binarySearch(blockStarts, index);
+        if (block < 0) {
+            // insertion point is after the block containing the record
+            block = -block - 2;
+        }
+
+        return readBlock(block).get((int) (index - blockStarts[block]));
+    }
+
+    /**
+     *
+     * @param block Block number
+     * @return All records of the block
+     * @throws IOException File IO exception
+     */
+    public List<ImageResultEvent> readBlock(final int block) throws IOException {
+        if (block == cachedBlock) {
+            return cachedRecords;
+        }
+
+        final ByteBuffer lengths = read(blockOffsets[block], 8);
+        final int compressedLength = lengths.getInt();
+        final int rawLength = lengths.getInt();
+        if (compressedLength <= 0 || compressedLength > footerOffset - blockOffsets[block] - 8
+                || rawLength <= 0 || rawLength > (long) compressedLength * MAX_INFLATE_RATIO) {
+            throw new IOException("Corrupted block " + block);
+        }
+        final byte[] raw = new byte[rawLength];
+        final ByteBuffer compressed = read(blockOffsets[block] + 8, compressedLength);
+
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, compressedLength);
+        try {
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                final int inflated = inflater.inflate(raw, n, raw.length - n);
+                // no progress with all input consumed means truncated or corrupted data
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupted block " + block);
+                }
+                n += inflated;
+            }
+            if (n != raw.length) {
+                throw new IOException("Corrupted block " + block);
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException("Corrupted block " + block, e);
+        }
+
+        try {
+            cachedRecords = Collections.unmodifiableList(decodeBlock(ByteBuffer.wrap(raw)));
+        } catch (final RuntimeException e) {
+            throw new IOException("Corrupted block " + block, e);
+        }
+        cachedBlock = block;
+        return cachedRecords;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private ByteBuffer read(final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of binary file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static List<ImageResultEvent> decodeBlock(final ByteBuffer in) {
+        final int columns = in.get();
+        final int records = readVarInt(in);
+
+        final String[] dictionary = new String[readVarInt(in)];
+        byte[] previous = new byte[0];
+        for (int i = 0; i < dictionary.length; i++) {
+            final int shared = readVarInt(in);
+            final byte[] bytes = Arrays.copyOf(previous, shared + readVarInt(in));
+            in.get(bytes, shared, bytes.length - shared);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            previous = bytes;
+        }
+        final List<ImageResultEvent.Builder> builders = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            builders.add(ImageResultEvent.builder(dictionary[readVarInt(in)]));
+        }
+
+        final int[][] colors = new int[records][];
+        if ((columns & COLORS) != 0) {
+            for (int i = 0; i < records; i++) {
+                colors[i] = new int[readVarInt(in)];
+            }
+            for (final int[] values : colors) {
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = (in.get() & 0xff) << 16 | (in.get() & 0xff) << 8 | (in.get() & 0xff);
+                }
+            }
+        }
+
+        final int[][] counts = new int[records][];
+        if ((columns & COUNTS) != 0) {
+            for (int i = 0; i < records; i++) {
+                counts[i] = new int[colors[i].length];
+                for (int j = 0; j < counts[i].length; j++) {
+                    counts[i][j] = readVarInt(in);
+                }
+            }
+        }
+        for (int i = 0; i < records; i++) {
+            builders.get(i).colors(colors[i], counts[i]);
+        }
+
+        if ((columns & STATS) != 0) {
+            for (final ImageResultEvent.Builder builder : builders) {
+                final double[] mean = {in.getDouble(), in.getDouble(), in.getDouble()};
+                final double[] variance = {in.getDouble(), in.getDouble(), in.getDouble()};
+                builder.channels(mean, variance);
+            }
+        }
+
+        if ((columns & DISTINCT) != 0) {
+            for (final ImageResultEvent.Builder builder : builders) {
+                builder.distinctColors(readVarLong(in));
+            }
+        }
+
+        if ((columns & HISTOGRAM) != 0) {
+            final int[][] histograms = new int[records][];
+            for (int i = 0; i < records; i++) {
+                histograms[i] = new int[readVarInt(in)];
+            }
+            for (int i = 0; i < records; i++) {
+                for (int j = 0; j < histograms[i].length; j++) {
+                    histograms[i][j] = readVarInt(in);
+                }
+                builders.get(i).luminanceHistogram(histograms[i]);
+            }
+        }
+
+        final List<ImageResultEvent> result = new ArrayList<>(records);
+        for (final ImageResultEvent.Builder builder : builders) {
+            result.add(builder.build());
+        }
+        return result;
+    }
+}
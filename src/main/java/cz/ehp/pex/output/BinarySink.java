@@ -0,0 +1,198 @@
+package cz.ehp.pex.output;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static cz.ehp.pex.output.BinaryFormat.*;
+
+/**
+ * Compact binary output - deflated columnar blocks with footer index for random access by {@link BinaryReader}.
+ * See {@link BinaryFormat} for the file layout.
+ */
+public class BinarySink implements OutputSink {
+    private static final Logger log = LoggerFactory.getLogger(BinarySink.class);
+    private static final int BLOCK_RECORDS = 4096;
+
+    private final DataOutputStream output;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] deflateBuffer = new byte[64 * 1024];
+    private final List<ImageResultEvent> block = new ArrayList<>(BLOCK_RECORDS);
+    private final List<Long> blockOffsets = new ArrayList<>();
+    private final List<Integer> blockRecords = new ArrayList<>();
+    private int blockColumns;
+    private long offset;
+
+    public BinarySink(final Path file) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        offset = HEADER_LENGTH;
+    }
+
+    @Override
+    public void write(final ImageResultEvent event) throws IOException {
+        final int columns = columns(event);
+        if (!block.isEmpty() && (columns != blockColumns || block.size() >= BLOCK_RECORDS)) {
+            flushBlock();
+        }
+        blockColumns = columns;
+        block.add(event);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!block.isEmpty()) {
+                flushBlock();
+            }
+
+            output.writeInt(blockOffsets.size());
+            for (int i = 0; i < blockOffsets.size(); i++) {
+                output.writeLong(blockOffsets.get(i));
+                output.writeInt(blockRecords.get(i));
+            }
+            output.writeLong(offset);
+            output.writeInt(MAGIC);
+        } finally {
+            deflater.end();
+            output.close();
+        }
+    }
+
+    private static int columns(final ImageResultEvent event) {
+        return (event.getColors() != null ? COLORS : 0)
+                | (event.getCounts() != null ? COUNTS : 0)
+                | (event.getMean() != null ? STATS : 0)
+                | (event.getDistinctColors() >= 0 ? DISTINCT : 0)
+                | (event.getLuminanceHistogram() != null ? HISTOGRAM : 0);
+    }
+
+    private void flushBlock() throws IOException {
+        final byte[] raw = encodeBlock();
+
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        while (!deflater.finished()) {
+            final int n = deflater.deflate(deflateBuffer);
+            compressed.write(deflateBuffer, 0, n);
+        }
+
+        blockOffsets.add(offset);
+        blockRecords.add(block.size());
+        output.writeInt(compressed.size());
+        output.writeInt(raw.length);
+        compressed.writeTo(output);
+        offset += 8 + compressed.size();
+
+        log.debug("Written block of {} records, {} bytes compressed to {}", block.size(), raw.length, compressed.size());
+        block.clear();
+    }
+
+    private byte[] encodeBlock() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(block.size() * 64);
+        out.write(blockColumns);
+        writeVarLong(out, block.size());
+
+        // url dictionary, repeated urls are stored only once per block
+        final Map<String, Integer> dictionary = new HashMap<>();
+        final int[] ids = new int[block.size()];
+        final List<String> urls = new ArrayList<>();
+        for (int i = 0; i < block.size(); i++) {
+            final String url = block.get(i).getUrl();
+            ids[i] = dictionary.computeIfAbsent(url, k -> {
+                urls.add(k);
+                return urls.size() - 1;
+            });
+        }
+        // front coding - common prefix with previous url is stored as its length only
+        writeVarLong(out, urls.size());
+        byte[] previous = new byte[0];
+        for (final String url : urls) {
+            final byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            final int prefix = Arrays.mismatch(previous, bytes);
+            final int shared = prefix < 0 ? bytes.length : Math.min(prefix, bytes.length);
+            writeVarLong(out, shared);
+            writeVarLong(out, bytes.length - shared);
+            out.write(bytes, shared, bytes.length - shared);
+            previous = bytes;
+        }
+        for (final int id : ids) {
+            writeVarLong(out, id);
+        }
+
+        if ((blockColumns & COLORS) != 0) {
+            for (final ImageResultEvent event : block) {
+                writeVarLong(out, event.getColors().length);
+            }
+            for (final ImageResultEvent event : block) {
+                for (final int color : event.getColors()) {
+                    out.write(color >>> 16);
+                    out.write(color >>> 8);
+                    out.write(color);
+                }
+            }
+        }
+
+        if ((blockColumns & COUNTS) != 0) {
+            for (final ImageResultEvent event : block) {
+                for (final int count : event.getCounts()) {
+                    writeVarLong(out, count);
+                }
+            }
+        }
+
+        if ((blockColumns & STATS) != 0) {
+            for (final ImageResultEvent event : block) {
+                for (final double value : event.getMean()) {
+                    writeDouble(out, value);
+                }
+                for (final double value : event.getVariance()) {
+                    writeDouble(out, value);
+                }
+            }
+        }
+
+        if ((blockColumns & DISTINCT) != 0) {
+            for (final ImageResultEvent event : block) {
+                writeVarLong(out, event.getDistinctColors());
+            }
+        }
+
+        if ((blockColumns & HISTOGRAM) != 0) {
+            for (final ImageResultEvent event : block) {
+                writeVarLong(out, event.getLuminanceHistogram().length);
+            }
+            for (final ImageResultEvent event : block) {
+                for (final int count : event.getLuminanceHistogram()) {
+                    writeVarLong(out, count);
+                }
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void writeDouble(final ByteArrayOutputStream out, final double value) {
+        final long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift));
+        }
+    }
+}
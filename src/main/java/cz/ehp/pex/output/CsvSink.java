@@ -0,0 +1,77 @@
+package cz.ehp.pex.output;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+
+/**
+ * Text output - one CSV line per image with columns of selected aggregators.
+ */
+public class CsvSink implements OutputSink {
+    private static final Logger log = LoggerFactory.getLogger(CsvSink.class);
+
+    private final Writer writer;
+
+    public CsvSink(final Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(final ImageResultEvent event) throws IOException {
+        writer.write(format(event));
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     *
+     * @param event Image result
+     * @return CSV line including line separator
+     */
+    public static String format(final ImageResultEvent event) {
+        log.debug("Converting event for url {}", event.getUrl());
+        final StringBuilder sb = new StringBuilder();
+        sb.append(event.getUrl());
+        if (event.getColors() != null) {
+            sb.append(",");
+            sb.append(Arrays.stream(event.getColors())
+                    .mapToObj(x -> String.format("%06X", x))
+                    .collect(Collectors.joining(",")));
+        }
+        if (event.getCounts() != null) {
+            sb.append(",");
+            sb.append(Arrays.stream(event.getCounts())
+                    .mapToObj(Integer::toString)
+                    .collect(Collectors.joining(",")));
+        }
+        if (event.getMean() != null) {
+            sb.append(",");
+            sb.append(DoubleStream.concat(Arrays.stream(event.getMean()), Arrays.stream(event.getVariance()))
+                    .mapToObj(x -> String.format(Locale.ROOT, "%.2f", x))
+                    .collect(Collectors.joining(",")));
+        }
+        if (event.getDistinctColors() >= 0) {
+            sb.append(",");
+            sb.append(event.getDistinctColors());
+        }
+        if (event.getLuminanceHistogram() != null) {
+            sb.append(",");
+            sb.append(Arrays.stream(event.getLuminanceHistogram())
+                    .mapToObj(Integer::toString)
+                    .collect(Collectors.joining(",")));
+        }
+        sb.append("\n");
+
+        return sb.toString();
+    }
+}
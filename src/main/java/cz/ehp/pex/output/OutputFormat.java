@@ -0,0 +1,31 @@
+package cz.ehp.pex.output;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Supported output formats.
+ */
+public enum OutputFormat {
+    CSV {
+        @Override
+        public OutputSink open(final Path file) throws IOException {
+            return new CsvSink(Files.newBufferedWriter(file));
+        }
+    },
+    BINARY {
+        @Override
+        public OutputSink open(final Path file) throws IOException {
+            return new BinarySink(file);
+        }
+    };
+
+    /**
+     *
+     * @param file Output file, overwritten if it exists
+     * @return Sink writing into the file
+     * @throws IOException File IO exception
+     */
+    public abstract OutputSink open(Path file) throws IOException;
+}
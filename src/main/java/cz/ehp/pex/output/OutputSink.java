@@ -0,0 +1,19 @@
+package cz.ehp.pex.output;
+
+import cz.ehp.pex.events.ImageResultEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of image processing results. Called from a single thread.
+ */
+public interface OutputSink extends Closeable {
+
+    /**
+     *
+     * @param event Result to be written
+     * @throws IOException File IO exception
+     */
+    void write(ImageResultEvent event) throws IOException;
+}
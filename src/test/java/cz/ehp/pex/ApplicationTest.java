@@ -1,8 +1,10 @@
 package cz.ehp.pex;
 
+import cz.ehp.pex.aggregators.Pipeline;
 import cz.ehp.pex.events.ImageDataEvent;
 import cz.ehp.pex.events.ImageResultEvent;
 import cz.ehp.pex.events.UrlEvent;
+import cz.ehp.pex.output.OutputFormat;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
@@ -18,6 +20,7 @@ import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
 import javax.imageio.ImageIO;
+import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
@@ -27,6 +30,7 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -213,17 +217,57 @@ public class ApplicationTest {
         };
     }
 
-    @Test(dataProvider = "convertEvent")
-    public void testConvertEvent(final ImageResultEvent event, final String line) {
-        assertEquals(app.convertEvent(event), line);
+    @Test
+    public void testProcessDuplicateImage() throws IOException, URISyntaxException {
+        final PerceptualIndex index = new PerceptualIndex(4, 16);
+        app = new Application(httpclient, index, Pipeline.parse(Pipeline.DEFAULT_SPEC), OutputFormat.CSV);
+
+        final ImageResultEvent first = app.processImage(new ImageDataEvent("http://test.url", loadImage("FApqk3D.jpg")));
+        final ImageResultEvent second = app.processImage(new ImageDataEvent("http://copy.url", loadImage("FApqk3D.jpg")));
+        app.processImage(new ImageDataEvent("http://other.url", loadImage("ihczg3pmle3z.jpg")));
+
+        assertEquals(second, first.withUrl("http://copy.url"));
+        assertEquals(index.size(), 2);
     }
 
-    @DataProvider(name = "convertEvent")
-    public Object[][] convertEventProvider() {
-        return new Object[][]{
-                {new ImageResultEvent("http://test.url", new int[]{1, 2, 3}), "http://test.url,000001,000002,000003\n"},
-                {new ImageResultEvent("http://other.url", new int[]{0xffffff, 0xff0000, 0xff}), "http://other.url,FFFFFF,FF0000,0000FF\n"}
-        };
+    @Test
+    public void testProcessDifferentAccentColor() {
+        app = new Application(httpclient, new PerceptualIndex(4, 16), Pipeline.parse(Pipeline.DEFAULT_SPEC), OutputFormat.CSV);
+
+        final ImageResultEvent red = app.processImage(new ImageDataEvent("http://red.url", PerceptualHashTest.accentImage(400, Color.RED)));
+        final ImageResultEvent blue = app.processImage(new ImageDataEvent("http://blue.url", PerceptualHashTest.accentImage(400, Color.BLUE)));
+
+        assertEquals(red.getColors(), new int[]{0xFFFFFF, 0xFF0000});
+        assertEquals(blue.getColors(), new int[]{0xFFFFFF, 0x0000FF});
+    }
+
+    @Test
+    public void testProcessScaledImage() {
+        final PerceptualIndex index = new PerceptualIndex(4, 16);
+        app = new Application(httpclient, index, Pipeline.parse("counts:3,histogram:4"), OutputFormat.CSV);
+
+        app.processImage(new ImageDataEvent("http://large.url", PerceptualHashTest.accentImage(400, Color.RED)));
+        final ImageResultEvent small = app.processImage(new ImageDataEvent("http://small.url", PerceptualHashTest.accentImage(200, Color.RED)));
+
+        assertEquals(index.size(), 1);
+        assertEquals(small, ImageResultEvent.builder("http://small.url")
+                .colors(new int[]{0xFFFFFF, 0xFF0000}, new int[]{38400, 1600})
+                .luminanceHistogram(new int[]{0, 1600, 0, 38400})
+                .build());
+    }
+
+    @Test
+    public void testRemoveOption() {
+        final List<String> arguments = new ArrayList<>(asList("-a", "stats", "in.txt", "out.csv"));
+
+        assertEquals(Application.removeOption(arguments, "-a", "top:3"), "stats");
+        assertEquals(Application.removeOption(arguments, "-f", "csv"), "csv");
+        assertEquals(arguments, asList("in.txt", "out.csv"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRemoveOptionWithoutValue() {
+        Application.removeOption(new ArrayList<>(asList("in.txt", "out.csv", "-d")), "-d", null);
     }
 
     private Path getImagePath(final String name) throws URISyntaxException {
@@ -0,0 +1,107 @@
+package cz.ehp.pex;
+
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PerceptualHashTest {
+
+    @Test
+    public void testSameImage() throws IOException, URISyntaxException {
+        final PerceptualHash a = PerceptualHash.of(loadImage("FApqk3D.jpg"));
+        final PerceptualHash b = PerceptualHash.of(loadImage("FApqk3D.jpg"));
+
+        assertEquals(a, b);
+        assertEquals(a.distance(b), 0);
+        assertEquals(a.colorDistance(b), 0);
+    }
+
+    @Test
+    public void testScaledImage() throws IOException, URISyntaxException {
+        final BufferedImage image = loadImage("FApqk3D.jpg");
+        final PerceptualHash a = PerceptualHash.of(image);
+        final PerceptualHash b = PerceptualHash.of(scale(image, image.getWidth() / 2, image.getHeight() / 2));
+
+        assertTrue(a.distance(b) <= 4, "Distance " + a.distance(b));
+        assertTrue(a.colorDistance(b) <= 16, "Color distance " + a.colorDistance(b));
+    }
+
+    @Test
+    public void testDifferentImage() throws IOException, URISyntaxException {
+        final PerceptualHash a = PerceptualHash.of(loadImage("FApqk3D.jpg"));
+        final PerceptualHash b = PerceptualHash.of(loadImage("ihczg3pmle3z.jpg"));
+
+        assertTrue(a.distance(b) > 8, "Distance " + a.distance(b));
+    }
+
+    @Test
+    public void testColorDistance() {
+        final int[] colors = new int[PerceptualHash.CELLS];
+        Arrays.fill(colors, 0x102030);
+        final PerceptualHash a = new PerceptualHash(0, colors.clone(), 1);
+        colors[PerceptualHash.CELLS - 1] = 0x1020F0;
+        final PerceptualHash b = new PerceptualHash(0, colors, 1);
+
+        assertEquals(a.distance(b), 0);
+        assertEquals(a.colorDistance(b), 0xC0);
+    }
+
+    @Test
+    public void testDifferentAccentColor() {
+        final PerceptualHash red = PerceptualHash.of(accentImage(400, Color.RED));
+        final PerceptualHash blue = PerceptualHash.of(accentImage(400, Color.BLUE));
+
+        // same luminance layout, the accent color differs only in cell colors
+        assertTrue(red.distance(blue) <= 4, "Distance " + red.distance(blue));
+        assertTrue(red.colorDistance(blue) > 16, "Color distance " + red.colorDistance(blue));
+    }
+
+    @Test
+    public void testTinyImage() {
+        final PerceptualHash a = PerceptualHash.of(accentImage(3, Color.RED));
+
+        assertEquals(a, PerceptualHash.of(accentImage(3, Color.RED)));
+    }
+
+    static BufferedImage accentImage(final int size, final Color accent) {
+        final BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, size, size);
+        g.setColor(accent);
+        g.fillRect(size * 2 / 5, size * 2 / 5, Math.max(1, size / 5), Math.max(1, size / 5));
+        g.dispose();
+        return image;
+    }
+
+    private BufferedImage scale(final BufferedImage image, final int width, final int height) {
+        final BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private BufferedImage loadImage(final String name) throws IOException, URISyntaxException {
+        final Path path = Paths.get(getClass().getResource("/images").toURI()).resolve(name);
+
+        try (final BufferedInputStream bis = new BufferedInputStream(Files.newInputStream(path))) {
+            return ImageIO.read(bis);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package cz.ehp.pex;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.expectThrows;
+
+public class PerceptualIndexTest {
+    private static final ImageResultEvent RESULT = new ImageResultEvent(null, new int[]{1, 2, 3});
+
+    @Test
+    public void testFindNear() throws IOException {
+        try (final PerceptualIndex index = new PerceptualIndex(4, 16)) {
+            index.put(hash(0xF0F0F0F0F0F0F0F0L, 0x808080), RESULT);
+
+            assertEquals(index.find(hash(0xF0F0F0F0F0F0F0F0L, 0x808080)), RESULT);
+            assertEquals(index.find(hash(0xF0F0F0F0F0F0F0F3L, 0x808080)), RESULT);
+            assertEquals(index.find(hash(0xF0F0F0F0F0F0F0F0L, 0x848C80)), RESULT);
+        }
+    }
+
+    @Test
+    public void testFindClosest() throws IOException {
+        try (final PerceptualIndex index = new PerceptualIndex(4, 16)) {
+            index.put(hash(0x0FL, 0), new ImageResultEvent(null, new int[]{1}));
+            index.put(hash(0x01L, 0), new ImageResultEvent(null, new int[]{2}));
+
+            assertEquals(index.find(hash(0x00L, 0)), new ImageResultEvent(null, new int[]{2}));
+        }
+    }
+
+    @Test
+    public void testMiss() throws IOException {
+        try (final PerceptualIndex index = new PerceptualIndex(4, 16)) {
+            index.put(hash(0xF0F0F0F0F0F0F0F0L, 0x808080), RESULT);
+
+            assertNull(index.find(hash(0xF0F0F0F0F0F0F00FL, 0x808080)));
+            assertNull(index.find(hash(0x0F0F0F0F0F0F0F0FL, 0x808080)));
+            assertNull(index.find(hash(0xF0F0F0F0F0F0F0F0L, 0x80A080)));
+        }
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        final Path file = Files.createTempFile("pex-", ".idx");
+        final ImageResultEvent full = ImageResultEvent.builder(null)
+                .colors(new int[]{0xFFFFFF, 0, 0xF3C300}, new int[]{30, 20, 10})
+                .channels(new double[]{1, 2, 3}, new double[]{0.5, 0.25, 0})
+                .distinctColors(1234)
+                .luminanceHistogram(new int[]{1, 0, 59})
+                .build();
+
+        try {
+            try (final PerceptualIndex index = PerceptualIndex.open(file, 4, 16, "all")) {
+                index.put(hash(0x1234L, 0x102030), full);
+            }
+
+            // simulate incomplete record written by killed run
+            Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+            try (final PerceptualIndex index = PerceptualIndex.open(file, 4, 16, "all")) {
+                assertEquals(index.size(), 1);
+                assertEquals(index.find(hash(0x1234L, 0x102030)), full);
+                index.put(hash(0x5678L, 0x102030), RESULT);
+            }
+
+            try (final PerceptualIndex index = PerceptualIndex.open(file, 4, 16, "all")) {
+                assertEquals(index.size(), 2);
+                assertEquals(index.find(hash(0x5678L, 0x102030)), RESULT);
+            }
+
+            // file created for different aggregators is rejected and kept intact
+            final byte[] content = Files.readAllBytes(file);
+            expectThrows(IOException.class, () -> PerceptualIndex.open(file, 4, 16, "top:3"));
+            assertEquals(Files.readAllBytes(file), content);
+
+            try (final PerceptualIndex index = PerceptualIndex.open(file, 4, 16, "all")) {
+                assertEquals(index.size(), 2);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testForeignFile() throws IOException {
+        final Path file = Files.createTempFile("pex-", ".idx");
+        try {
+            Files.write(file, new byte[]{1, 2});
+
+            expectThrows(IOException.class, () -> PerceptualIndex.open(file, 4, 16, "all"));
+            assertEquals(Files.readAllBytes(file), new byte[]{1, 2});
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testColorThreshold() throws IOException {
+        try (final PerceptualIndex index = new PerceptualIndex(4, 0)) {
+            index.put(hash(0x1234L, 0x808080), RESULT);
+
+            assertEquals(index.find(hash(0x1234L, 0x808080)), RESULT);
+            assertNull(index.find(hash(0x1234L, 0x808081)));
+        }
+    }
+
+    @Test
+    public void testDifferentCellColor() throws IOException {
+        try (final PerceptualIndex index = new PerceptualIndex(4, 16)) {
+            final int[] colors = new int[PerceptualHash.CELLS];
+            Arrays.fill(colors, 0xFFFFFF);
+            index.put(new PerceptualHash(0x1234L, colors.clone(), 100), RESULT);
+
+            colors[30] = 0xFF0000;
+            assertNull(index.find(new PerceptualHash(0x1234L, colors, 100)));
+        }
+    }
+
+    @Test
+    public void testRescaledCounts() throws IOException {
+        final ImageResultEvent result = ImageResultEvent.builder(null)
+                .colors(new int[]{0xFFFFFF, 0xFF0000}, new int[]{90, 10})
+                .luminanceHistogram(new int[]{3, 10, 0, 87})
+                .build();
+
+        try (final PerceptualIndex index = new PerceptualIndex(4, 16)) {
+            index.put(hash(0x1234L, 0x808080), result);
+
+            final int[] colors = hash(0x1234L, 0x808080).getColors();
+            final ImageResultEvent scaled = index.find(new PerceptualHash(0x1234L, colors, 25));
+            assertEquals(scaled.getColors(), new int[]{0xFFFFFF, 0xFF0000});
+            assertEquals(scaled.getCounts(), new int[]{23, 3});
+            // rounding error goes to the largest bin
+            assertEquals(scaled.getLuminanceHistogram(), new int[]{1, 3, 0, 21});
+        }
+    }
+
+    private static PerceptualHash hash(final long hash, final int color) {
+        final int[] colors = new int[PerceptualHash.CELLS];
+        Arrays.fill(colors, color);
+        return new PerceptualHash(hash, colors, 100);
+    }
+}
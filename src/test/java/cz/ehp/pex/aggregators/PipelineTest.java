@@ -0,0 +1,96 @@
+package cz.ehp.pex.aggregators;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PipelineTest {
+
+    @Test(dataProvider = "spec")
+    public void testParse(final String spec, final String normalized) {
+        assertEquals(Pipeline.parse(spec).getSpec(), normalized);
+    }
+
+    @DataProvider(name = "spec")
+    public Object[][] specProvider() {
+        return new Object[][]{
+                {"top", "top:3"},
+                {"top:5", "top:5"},
+                {"counts", "counts:3"},
+                {"top:3, stats,distinct,histogram", "top:3,stats,distinct,histogram:16"},
+                {"histogram:4,stats", "histogram:4,stats"}
+        };
+    }
+
+    @Test(dataProvider = "invalidSpec", expectedExceptions = IllegalArgumentException.class)
+    public void testParseInvalid(final String spec) {
+        Pipeline.parse(spec);
+    }
+
+    @DataProvider(name = "invalidSpec")
+    public Object[][] invalidSpecProvider() {
+        return new Object[][]{{"unknown"}, {"top:x"}, {"top:0"}, {"histogram:3"}, {"top:3,top:5"}, {"top,counts"}};
+    }
+
+    @Test
+    public void testProcess() {
+        // 4x2 image - 4 white, 3 black and 1 red pixel
+        final BufferedImage image = new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+        final int[] pixels = {0xffffff, 0xffffff, 0, 0xff0000, 0xffffff, 0, 0, 0xffffff};
+        image.setRGB(0, 0, 4, 2, pixels, 0, 4);
+
+        final ImageResultEvent result = Pipeline.parse("counts:2,stats,distinct,histogram:4")
+                .process("http://test.url", image);
+
+        assertEquals(result.getUrl(), "http://test.url");
+        assertEquals(result.getColors(), new int[]{0xffffff, 0});
+        assertEquals(result.getCounts(), new int[]{4, 3});
+        assertEquals(result.getMean()[0], 5 * 255 / 8.0, 1e-9);
+        assertEquals(result.getMean()[1], 4 * 255 / 8.0, 1e-9);
+        assertEquals(result.getVariance()[1], 255 * 255 / 4.0, 1e-6);
+        assertEquals(result.getDistinctColors(), 3);
+        assertEquals(result.getLuminanceHistogram(), new int[]{3, 1, 0, 4});
+    }
+
+    @Test
+    public void testProcessSelected() {
+        final BufferedImage image = new BufferedImage(3, 3, BufferedImage.TYPE_INT_RGB);
+
+        final ImageResultEvent result = Pipeline.parse("distinct").process("http://test.url", image);
+
+        assertEquals(result, ImageResultEvent.builder("http://test.url").distinctColors(1).build());
+    }
+
+    @Test
+    public void testTopColorsWithoutCounts() {
+        final BufferedImage image = new BufferedImage(3, 3, BufferedImage.TYPE_INT_RGB);
+
+        final ImageResultEvent result = Pipeline.parse("top").process("http://test.url", image);
+
+        assertEquals(result, new ImageResultEvent("http://test.url", new int[]{0}));
+    }
+
+    @Test
+    public void testTopColorsOfManyColors() {
+        // every color in a row is unique, color of row index is repeated in last column
+        final BufferedImage image = new BufferedImage(1001, 300, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth() - 1; x++) {
+                image.setRGB(x, y, 0x100000 + y * 1000 + x);
+            }
+            image.setRGB(image.getWidth() - 1, y, 0x100000 + (y % 3) * 1000);
+        }
+
+        final ImageResultEvent result = Pipeline.parse("counts:3,distinct").process("http://test.url", image);
+
+        assertEquals(result.getColors(), new int[]{0x100000 + 2000, 0x100000 + 1000, 0x100000});
+        assertEquals(result.getCounts(), new int[]{101, 101, 101});
+        assertTrue(Math.abs(result.getDistinctColors() - 300000) < 300000 * 0.05,
+                "Distinct colors " + result.getDistinctColors());
+    }
+}
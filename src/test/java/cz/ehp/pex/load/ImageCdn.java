@@ -0,0 +1,277 @@
+package cz.ehp.pex.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP server simulating an image CDN. Behaviour of every response is driven by url parameters,
+ * so generated input files fully describe the expected outcome:
+ * <pre>
+ * /img/{variant}.{format}?w=640&amp;h=480&amp;dist=NOISE - generated image, equal parameters give equal image
+ * latency=ms   - delay before response headers
+ * error=status - respond with error status instead of image
+ * redirect=n   - chain of n redirects before the image
+ * slow=ms      - slow-loris response, body is dripped in small pieces for given time
+ * </pre>
+ * Bandwidth cap in bytes per second applies to every image response.
+ * The CDN listens on several loopback ports. Each port is a separate route for the HTTP client connection pool,
+ * so like production urls spread over many hosts, downloads are not limited by connections per route.
+ * Generated images are cached in temporary files, so they are not counted in heap usage and GC of the application
+ * under test.
+ */
+public class ImageCdn implements Closeable {
+    private static final int SLOW_PIECES = 20;
+    private static final int BANDWIDTH_TICK_MILLIS = 50;
+    private static final int COPY_BUFFER = 8192;
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final ExecutorService executor;
+    private final long bandwidth;
+    private final Path directory;
+    private final Map<String, Path> images = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder redirects = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    /**
+     *
+     * @param bandwidth Bandwidth cap of single response in bytes per second, 0 means unlimited
+     * @param routes Number of listening ports
+     * @throws IOException Server socket exception
+     */
+    public ImageCdn(final long bandwidth, final int routes) throws IOException {
+        if (routes < 1) {
+            throw new IllegalArgumentException("At least one route is required");
+        }
+        this.bandwidth = bandwidth;
+        directory = Files.createTempDirectory("pex-cdn-");
+        // handlers mostly sleep, so every connection gets its own thread
+        executor = Executors.newCachedThreadPool();
+        try {
+            for (int i = 0; i < routes; i++) {
+                final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+                server.setExecutor(executor);
+                server.createContext("/img/", this::handle);
+                server.start();
+                servers.add(server);
+            }
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     *
+     * @return Base uri of every route
+     */
+    public List<URI> getBaseUris() {
+        final List<URI> uris = new ArrayList<>(servers.size());
+        for (final HttpServer server : servers) {
+            uris.add(baseUri(server.getAddress()));
+        }
+        return uris;
+    }
+
+    private static URI baseUri(final InetSocketAddress address) {
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort());
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getRedirects() {
+        return redirects.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getAborted() {
+        return aborted.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public void close() {
+        for (final HttpServer server : servers) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+        for (final Path image : images.values()) {
+            image.toFile().delete();
+        }
+        directory.toFile().delete();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            final URI uri = exchange.getRequestURI();
+            final Map<String, String> query = parseQuery(uri.getRawQuery());
+            sleep(intParam(query, "latency"));
+
+            final int redirect = intParam(query, "redirect");
+            if (redirect > 0) {
+                redirects.increment();
+                query.put("redirect", Integer.toString(redirect - 1));
+                // redirect stays on the same route
+                exchange.getResponseHeaders().set("Location", baseUri(exchange.getLocalAddress()) + uri.getRawPath()
+                        + "?" + formatQuery(query));
+                exchange.sendResponseHeaders(302, -1);
+                return;
+            }
+
+            final int error = intParam(query, "error");
+            if (error > 0) {
+                errors.increment();
+                exchange.sendResponseHeaders(error, -1);
+                return;
+            }
+
+            final String path = uri.getRawPath();
+            final Path body = image(path, query);
+            final long length = Files.size(body);
+
+            exchange.getResponseHeaders().set("Content-Type", "image/" + path.substring(path.lastIndexOf('.') + 1));
+            exchange.sendResponseHeaders(200, length);
+            try (final InputStream in = Files.newInputStream(body);
+                 final OutputStream out = exchange.getResponseBody()) {
+                final int slow = intParam(query, "slow");
+                if (slow > 0) {
+                    write(in, out, length, (length + SLOW_PIECES - 1) / SLOW_PIECES, slow / SLOW_PIECES);
+                } else if (bandwidth > 0) {
+                    write(in, out, length, Math.max(1, bandwidth * BANDWIDTH_TICK_MILLIS / 1000), BANDWIDTH_TICK_MILLIS);
+                } else {
+                    write(in, out, length, length, 0);
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            // client gave up, nothing to report back
+            aborted.increment();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Generates image of given url in advance, so image encoding is not measured as response latency.
+     *
+     * @param url Image url
+     * @throws IOException Encoding exception
+     */
+    public void prepare(final URI url) throws IOException {
+        image(url.getRawPath(), parseQuery(url.getRawQuery()));
+    }
+
+    private Path image(final String path, final Map<String, String> query) throws IOException {
+        final String name = path.substring("/img/".length());
+        final int dot = name.lastIndexOf('.');
+        final String format = name.substring(dot + 1);
+        final long variant = Long.parseLong(name.substring(0, dot));
+        final int width = intParam(query, "w");
+        final int height = intParam(query, "h");
+        final SyntheticImages.Distribution distribution = SyntheticImages.Distribution.valueOf(query.get("dist"));
+
+        final String key = name + "/" + width + "x" + height + "/" + distribution;
+        Path body = images.get(key);
+        if (body == null) {
+            // concurrent requests may encode the same image twice, each into its own file with equal content
+            body = Files.createTempFile(directory, "img-", "." + format);
+            Files.write(body, SyntheticImages.create(width, height, distribution, format, variant));
+            final Path previous = images.putIfAbsent(key, body);
+            if (previous != null) {
+                Files.delete(body);
+                body = previous;
+            }
+        }
+        return body;
+    }
+
+    private void write(final InputStream in, final OutputStream out, final long length, final long piece,
+                       final long pauseMillis) throws IOException {
+        final byte[] buffer = new byte[COPY_BUFFER];
+        for (long offset = 0; offset < length; offset += piece) {
+            long remaining = Math.min(piece, length - offset);
+            while (remaining > 0) {
+                final int n = in.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+                if (n < 0) {
+                    throw new IOException("Unexpected end of image file");
+                }
+                out.write(buffer, 0, n);
+                bytesSent.add(n);
+                remaining -= n;
+            }
+            out.flush();
+            if (offset + piece < length) {
+                sleep(pauseMillis);
+            }
+        }
+    }
+
+    private static void sleep(final long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted response", e);
+        }
+    }
+
+    private static int intParam(final Map<String, String> query, final String name) {
+        final String value = query.get(name);
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+
+    private static Map<String, String> parseQuery(final String query) {
+        final Map<String, String> result = new LinkedHashMap<>();
+        if (query != null) {
+            for (final String pair : query.split("&")) {
+                final int eq = pair.indexOf('=');
+                result.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return result;
+    }
+
+    static String formatQuery(final Map<String, String> query) {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, String> entry : query.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
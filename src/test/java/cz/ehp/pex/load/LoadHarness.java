@@ -0,0 +1,144 @@
+package cz.ehp.pex.load;
+
+import cz.ehp.pex.Application;
+import cz.ehp.pex.events.ImageDataEvent;
+import cz.ehp.pex.events.ImageResultEvent;
+import cz.ehp.pex.events.UrlEvent;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Drives {@link Application#run} against {@link ImageCdn} with an input file generated from {@link LoadProfile}
+ * and measures throughput, latency, heap and GC.
+ */
+public class LoadHarness {
+    private static final long HEAP_SAMPLE_MILLIS = 10;
+
+    private final LoadProfile profile;
+
+    public LoadHarness(final LoadProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     *
+     * @return Measured results
+     * @throws IOException File or server IO exception
+     */
+    public LoadReport run() throws IOException {
+        final Path inputFile = Files.createTempFile("pex-load-", ".txt");
+        final Path outputFile = Files.createTempFile("pex-load-", ".csv");
+
+        try (final ImageCdn cdn = new ImageCdn(profile.getBandwidth(), profile.getRoutes())) {
+            final int expected = profile.writeInput(inputFile, cdn.getBaseUris());
+            try (final Stream<String> lines = Files.lines(inputFile)) {
+                for (final String url : (Iterable<String>) lines::iterator) {
+                    cdn.prepare(URI.create(url));
+                }
+            }
+            final InstrumentedApplication app = new InstrumentedApplication(profile.getImages());
+
+            // heap left over by input generation and image encoding is not reported as heap of the application
+            final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            memory.gc();
+            final long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+            final AtomicLong peakHeap = new AtomicLong(baselineHeap);
+            final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                    0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+            final long gcMillis = gcMillis();
+            final long gcCount = gcCount();
+            final long start = System.nanoTime();
+            try {
+                app.run(inputFile, outputFile);
+            } finally {
+                sampler.shutdownNow();
+            }
+            final long wallNanos = System.nanoTime() - start;
+
+            final long records;
+            try (final Stream<String> lines = Files.lines(outputFile)) {
+                records = lines.count();
+            }
+
+            return new LoadReport(profile.getImages(), expected, records, wallNanos, cdn.getBytesSent(), cdn.getRedirects(),
+                    app.getDownloadNanos(), app.getProcessNanos(), peakHeap.get() - baselineHeap,
+                    gcMillis() - gcMillis, gcCount() - gcCount);
+        } finally {
+            Files.deleteIfExists(inputFile);
+            Files.deleteIfExists(outputFile);
+        }
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(x -> x >= 0)
+                .sum();
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+                .filter(x -> x >= 0)
+                .sum();
+    }
+
+    /**
+     * Production application with production HTTP client, recording latency of every stage.
+     */
+    private static class InstrumentedApplication extends Application {
+        private final long[] downloadNanos;
+        private final long[] processNanos;
+        private final AtomicInteger downloads = new AtomicInteger();
+        private final AtomicInteger processed = new AtomicInteger();
+
+        private InstrumentedApplication(final int capacity) {
+            super(createHttpClient());
+            downloadNanos = new long[capacity];
+            processNanos = new long[capacity];
+        }
+
+        @Override
+        protected ImageDataEvent loadImage(final UrlEvent event) {
+            final long start = System.nanoTime();
+            try {
+                return super.loadImage(event);
+            } finally {
+                downloadNanos[downloads.getAndIncrement()] = System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        protected ImageResultEvent processImage(final ImageDataEvent data) {
+            final long start = System.nanoTime();
+            try {
+                return super.processImage(data);
+            } finally {
+                processNanos[processed.getAndIncrement()] = System.nanoTime() - start;
+            }
+        }
+
+        private long[] getDownloadNanos() {
+            return Arrays.copyOf(downloadNanos, downloads.get());
+        }
+
+        private long[] getProcessNanos() {
+            return Arrays.copyOf(processNanos, processed.get());
+        }
+    }
+}
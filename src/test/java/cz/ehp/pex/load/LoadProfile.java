@@ -0,0 +1,209 @@
+package cz.ehp.pex.load;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic workload - number of images, their sizes, formats and color distributions and injected CDN faults.
+ * All random choices are seeded, so equal profiles give equal input files.
+ */
+public class LoadProfile {
+    private int images = 100;
+    private int variants = 20;
+    private int minSize = 64;
+    private int maxSize = 512;
+    private List<String> formats = Arrays.asList("jpg", "png", "gif", "bmp");
+    private List<SyntheticImages.Distribution> distributions = Arrays.asList(SyntheticImages.Distribution.values());
+    private int minLatency = 0;
+    private int maxLatency = 20;
+    private double errorRate = 0.05;
+    private double redirectRate = 0.05;
+    private int maxRedirects = 3;
+    private double slowRate = 0.01;
+    private int slowMillis = 1000;
+    private long bandwidth = 0;
+    private int routes = 16;
+    private long seed = 42;
+
+    /**
+     * Profile configured from system properties with given prefix, e.g. soak.images.
+     */
+    public static LoadProfile fromSystemProperties(final String prefix) {
+        final LoadProfile profile = new LoadProfile();
+        profile.images = Integer.getInteger(prefix + ".images", profile.images);
+        profile.variants = Integer.getInteger(prefix + ".variants", profile.variants);
+        profile.minSize = Integer.getInteger(prefix + ".minSize", profile.minSize);
+        profile.maxSize = Integer.getInteger(prefix + ".maxSize", profile.maxSize);
+        profile.minLatency = Integer.getInteger(prefix + ".minLatency", profile.minLatency);
+        profile.maxLatency = Integer.getInteger(prefix + ".maxLatency", profile.maxLatency);
+        profile.errorRate = Double.parseDouble(System.getProperty(prefix + ".errorRate", Double.toString(profile.errorRate)));
+        profile.redirectRate = Double.parseDouble(System.getProperty(prefix + ".redirectRate", Double.toString(profile.redirectRate)));
+        profile.slowRate = Double.parseDouble(System.getProperty(prefix + ".slowRate", Double.toString(profile.slowRate)));
+        profile.slowMillis = Integer.getInteger(prefix + ".slowMillis", profile.slowMillis);
+        profile.bandwidth = Long.getLong(prefix + ".bandwidth", profile.bandwidth);
+        profile.routes = Integer.getInteger(prefix + ".routes", profile.routes);
+        profile.seed = Long.getLong(prefix + ".seed", profile.seed);
+        return profile;
+    }
+
+    public LoadProfile images(final int images) {
+        this.images = images;
+        return this;
+    }
+
+    /**
+     *
+     * @param variants Number of distinct pictures, urls beyond that repeat the same picture under a new url
+     */
+    public LoadProfile variants(final int variants) {
+        this.variants = variants;
+        return this;
+    }
+
+    public LoadProfile size(final int minSize, final int maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    public LoadProfile formats(final String... formats) {
+        this.formats = Arrays.asList(formats);
+        return this;
+    }
+
+    public LoadProfile distributions(final SyntheticImages.Distribution... distributions) {
+        this.distributions = Arrays.asList(distributions);
+        return this;
+    }
+
+    public LoadProfile latency(final int minLatency, final int maxLatency) {
+        this.minLatency = minLatency;
+        this.maxLatency = maxLatency;
+        return this;
+    }
+
+    public LoadProfile errorRate(final double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public LoadProfile redirects(final double redirectRate, final int maxRedirects) {
+        this.redirectRate = redirectRate;
+        this.maxRedirects = maxRedirects;
+        return this;
+    }
+
+    public LoadProfile slowLoris(final double slowRate, final int slowMillis) {
+        this.slowRate = slowRate;
+        this.slowMillis = slowMillis;
+        return this;
+    }
+
+    /**
+     *
+     * @param bandwidth Bandwidth cap of single response in bytes per second, 0 means unlimited
+     */
+    public LoadProfile bandwidth(final long bandwidth) {
+        this.bandwidth = bandwidth;
+        return this;
+    }
+
+    /**
+     *
+     * @param routes Number of {@link ImageCdn} ports urls are spread over, like production images on many hosts
+     */
+    public LoadProfile routes(final int routes) {
+        this.routes = routes;
+        return this;
+    }
+
+    public LoadProfile seed(final long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getImages() {
+        return images;
+    }
+
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    public int getRoutes() {
+        return routes;
+    }
+
+    /**
+     *
+     * @param file Input file to be written, one url per line
+     * @param bases Base uris of {@link ImageCdn} routes, urls are spread evenly over them
+     * @return Number of urls which should return an image
+     * @throws IOException File IO exception
+     */
+    public int writeInput(final Path file, final List<URI> bases) throws IOException {
+        final Random random = new Random(seed);
+        int expected = 0;
+
+        try (final BufferedWriter bw = Files.newBufferedWriter(file)) {
+            for (int id = 0; id < images; id++) {
+                // picture parameters depend on variant only, so repeated variants are the same picture
+                final int variant = random.nextInt(variants);
+                final Random variantRandom = new Random(seed ^ variant * 0x9E3779B97F4A7C15L);
+                final String format = formats.get(variantRandom.nextInt(formats.size()));
+                final Map<String, String> query = new LinkedHashMap<>();
+                query.put("id", Integer.toString(id));
+                query.put("w", Integer.toString(minSize + variantRandom.nextInt(maxSize - minSize + 1)));
+                query.put("h", Integer.toString(minSize + variantRandom.nextInt(maxSize - minSize + 1)));
+                query.put("dist", distributions.get(variantRandom.nextInt(distributions.size())).name());
+
+                if (maxLatency > 0) {
+                    query.put("latency", Integer.toString(minLatency + random.nextInt(maxLatency - minLatency + 1)));
+                }
+                if (maxRedirects > 0 && random.nextDouble() < redirectRate) {
+                    query.put("redirect", Integer.toString(1 + random.nextInt(maxRedirects)));
+                }
+                if (random.nextDouble() < errorRate) {
+                    query.put("error", random.nextBoolean() ? "500" : "404");
+                } else {
+                    expected++;
+                    if (random.nextDouble() < slowRate) {
+                        query.put("slow", Integer.toString(slowMillis));
+                    }
+                }
+
+                bw.write(bases.get(id % bases.size()) + "/img/" + variant + "." + format + "?" + ImageCdn.formatQuery(query));
+                bw.newLine();
+            }
+        }
+
+        return expected;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadProfile{" +
+                "images=" + images +
+                ", variants=" + variants +
+                ", size=" + minSize + "-" + maxSize +
+                ", formats=" + formats +
+                ", distributions=" + distributions +
+                ", latency=" + minLatency + "-" + maxLatency +
+                ", errorRate=" + errorRate +
+                ", redirectRate=" + redirectRate +
+                ", slowRate=" + slowRate +
+                ", slowMillis=" + slowMillis +
+                ", bandwidth=" + bandwidth +
+                ", routes=" + routes +
+                ", seed=" + seed +
+                '}';
+    }
+}
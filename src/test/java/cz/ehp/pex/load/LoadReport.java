@@ -0,0 +1,109 @@
+package cz.ehp.pex.load;
+
+import java.util.Arrays;
+
+/**
+ * Result of a single {@link LoadHarness} run.
+ */
+public class LoadReport {
+    private final int inputUrls;
+    private final int expectedImages;
+    private final long outputRecords;
+    private final long wallNanos;
+    private final long bytesDownloaded;
+    private final long redirects;
+    private final long[] downloadNanos;
+    private final long[] processNanos;
+    private final long peakHeapBytes;
+    private final long gcMillis;
+    private final long gcCount;
+
+    public LoadReport(final int inputUrls, final int expectedImages, final long outputRecords, final long wallNanos,
+                      final long bytesDownloaded, final long redirects, final long[] downloadNanos, final long[] processNanos,
+                      final long peakHeapBytes, final long gcMillis, final long gcCount) {
+        this.inputUrls = inputUrls;
+        this.expectedImages = expectedImages;
+        this.outputRecords = outputRecords;
+        this.wallNanos = wallNanos;
+        this.bytesDownloaded = bytesDownloaded;
+        this.redirects = redirects;
+        this.downloadNanos = downloadNanos.clone();
+        this.processNanos = processNanos.clone();
+        Arrays.sort(this.downloadNanos);
+        Arrays.sort(this.processNanos);
+        this.peakHeapBytes = peakHeapBytes;
+        this.gcMillis = gcMillis;
+        this.gcCount = gcCount;
+    }
+
+    public int getExpectedImages() {
+        return expectedImages;
+    }
+
+    public long getOutputRecords() {
+        return outputRecords;
+    }
+
+    public long getRedirects() {
+        return redirects;
+    }
+
+    /**
+     *
+     * @return Written records per second
+     */
+    public double getThroughput() {
+        return outputRecords * 1e9 / wallNanos;
+    }
+
+    /**
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Download latency (including redirects and image decoding) in milliseconds
+     */
+    public double getDownloadMillis(final double percentile) {
+        return percentile(downloadNanos, percentile) / 1e6;
+    }
+
+    /**
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Processing latency (hashing and pixel aggregation) in milliseconds
+     */
+    public double getProcessMillis(final double percentile) {
+        return percentile(processNanos, percentile) / 1e6;
+    }
+
+    /**
+     *
+     * @return Peak heap usage during the run above the heap used right before it
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    private static long percentile(final long[] sorted, final double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("urls %d, images %d/%d, redirects %d, wall %.1f s, throughput %.1f images/s, %.2f MB/s%n"
+                        + "download ms p50 %.1f, p95 %.1f, p99 %.1f, max %.1f%n"
+                        + "process ms p50 %.1f, p95 %.1f, p99 %.1f, max %.1f%n"
+                        + "peak heap %d MB above baseline, GC %d ms in %d collections",
+                inputUrls, outputRecords, expectedImages, redirects, wallNanos / 1e9, getThroughput(),
+                bytesDownloaded / 1e6 / (wallNanos / 1e9),
+                getDownloadMillis(50), getDownloadMillis(95), getDownloadMillis(99), getDownloadMillis(100),
+                getProcessMillis(50), getProcessMillis(95), getProcessMillis(99), getProcessMillis(100),
+                peakHeapBytes >> 20, gcMillis, gcCount);
+    }
+}
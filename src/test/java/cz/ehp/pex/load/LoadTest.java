@@ -0,0 +1,57 @@
+package cz.ehp.pex.load;
+
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LoadTest {
+
+    @Test
+    public void testSmoke() throws IOException {
+        final LoadProfile profile = new LoadProfile()
+                .images(60)
+                .variants(15)
+                .size(32, 256)
+                .latency(0, 10)
+                .errorRate(0.2)
+                .redirects(0.2, 3)
+                .slowLoris(0.05, 200)
+                .bandwidth(2_000_000);
+
+        final LoadReport report = new LoadHarness(profile).run();
+        Reporter.log("Smoke " + profile + "\n" + report, true);
+
+        // failed urls are skipped, all other images including redirected and slow ones are written
+        assertTrue(report.getExpectedImages() > 0 && report.getExpectedImages() < profile.getImages());
+        assertEquals(report.getOutputRecords(), report.getExpectedImages());
+        assertTrue(report.getRedirects() > 0);
+    }
+
+    /**
+     * Long running soak test, run by mvn test -P soak. Profile is configured by soak.* system properties,
+     * optional soak.minThroughput (images/s) and soak.maxP99 (download ms) fail the run on regression.
+     */
+    @Test(groups = "soak")
+    public void testSoak() throws IOException {
+        final LoadProfile profile = LoadProfile.fromSystemProperties("soak");
+
+        final LoadReport report = new LoadHarness(profile).run();
+        Reporter.log("Soak " + profile + "\n" + report, true);
+
+        assertEquals(report.getOutputRecords(), report.getExpectedImages());
+        final String minThroughput = System.getProperty("soak.minThroughput");
+        if (minThroughput != null) {
+            assertTrue(report.getThroughput() >= Double.parseDouble(minThroughput),
+                    "Throughput " + report.getThroughput());
+        }
+        final String maxP99 = System.getProperty("soak.maxP99");
+        if (maxP99 != null) {
+            assertTrue(report.getDownloadMillis(99) <= Double.parseDouble(maxP99),
+                    "Download p99 " + report.getDownloadMillis(99));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package cz.ehp.pex.load;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generator of encoded test images with given size, format and color distribution.
+ */
+public final class SyntheticImages {
+
+    /**
+     * Color distribution of generated image.
+     */
+    public enum Distribution {
+        /** single color */
+        SOLID,
+        /** smooth horizontal and vertical gradient, many distinct colors */
+        GRADIENT,
+        /** few colors in rectangular blocks, like logos and charts */
+        PALETTE,
+        /** random pixels, worst case for color counting and compression */
+        NOISE
+    }
+
+    private SyntheticImages() {
+    }
+
+    /**
+     *
+     * @param width Image width
+     * @param height Image height
+     * @param distribution Color distribution
+     * @param format ImageIO format name - jpg, png, gif, bmp
+     * @param seed Seed of random colors
+     * @return Encoded image
+     * @throws IOException Encoding exception
+     */
+    public static byte[] create(final int width, final int height, final Distribution distribution,
+                                final String format, final long seed) throws IOException {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(seed);
+        final int[] row = new int[width];
+
+        switch (distribution) {
+            case SOLID:
+                final int color = random.nextInt(0x1000000);
+                Arrays.fill(row, color);
+                for (int y = 0; y < height; y++) {
+                    image.setRGB(0, y, width, 1, row, 0, width);
+                }
+                break;
+            case GRADIENT:
+                final int base = random.nextInt(0x100);
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        row[x] = (x * 255 / width) << 16 | (y * 255 / height) << 8 | base;
+                    }
+                    image.setRGB(0, y, width, 1, row, 0, width);
+                }
+                break;
+            case PALETTE:
+                final int[] palette = new int[2 + random.nextInt(6)];
+                for (int i = 0; i < palette.length; i++) {
+                    palette[i] = random.nextInt(0x1000000);
+                }
+                final int block = Math.max(1, Math.min(width, height) / 8);
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        row[x] = palette[((x / block) * 31 + (y / block) * 17) % palette.length];
+                    }
+                    image.setRGB(0, y, width, 1, row, 0, width);
+                }
+                break;
+            case NOISE:
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        row[x] = random.nextInt(0x1000000);
+                    }
+                    image.setRGB(0, y, width, 1, row, 0, width);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown distribution " + distribution);
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, out)) {
+            throw new IOException("No image writer for format " + format);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,160 @@
+package cz.ehp.pex.output;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class BinarySinkTest {
+    private Path binaryFile;
+    private Path csvFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        binaryFile = Files.createTempFile("pex-", ".pexb");
+        csvFile = Files.createTempFile("pex-", ".csv");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(binaryFile);
+        Files.deleteIfExists(csvFile);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final List<ImageResultEvent> events = createEvents(10000);
+        write(events);
+
+        try (final BinaryReader reader = new BinaryReader(binaryFile)) {
+            assertEquals(reader.getRecordCount(), events.size());
+            assertTrue(reader.getBlockCount() > 1);
+
+            final List<ImageResultEvent> actual = new ArrayList<>();
+            for (int block = 0; block < reader.getBlockCount(); block++) {
+                actual.addAll(reader.readBlock(block));
+            }
+            assertEquals(actual, events);
+        }
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        final List<ImageResultEvent> events = createEvents(10000);
+        write(events);
+
+        try (final BinaryReader reader = new BinaryReader(binaryFile)) {
+            for (final int index : new int[]{9999, 0, 4095, 4096, 4097, 8191, 8192, 1234}) {
+                assertEquals(reader.get(index), events.get(index));
+            }
+        }
+    }
+
+    @Test
+    public void testColumnChange() throws IOException {
+        final List<ImageResultEvent> events = new ArrayList<>();
+        events.add(new ImageResultEvent("http://test.url", new int[]{1, 2, 3}));
+        events.add(ImageResultEvent.builder("http://test.url").distinctColors(0).build());
+        events.add(ImageResultEvent.builder("http://other.url")
+                .channels(new double[]{1.5, 2, 3}, new double[]{0, 0.25, Double.MAX_VALUE})
+                .luminanceHistogram(new int[0])
+                .build());
+        write(events);
+
+        try (final BinaryReader reader = new BinaryReader(binaryFile)) {
+            assertEquals(reader.getBlockCount(), 3);
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(reader.get(i), events.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        write(new ArrayList<>());
+
+        try (final BinaryReader reader = new BinaryReader(binaryFile)) {
+            assertEquals(reader.getRecordCount(), 0);
+            assertEquals(reader.getBlockCount(), 0);
+        }
+    }
+
+    @Test
+    public void testConvert() throws IOException {
+        final List<ImageResultEvent> events = createEvents(5000);
+        write(events);
+
+        assertEquals(BinaryConverter.convert(binaryFile, csvFile), events.size());
+        assertEquals(Files.readAllLines(csvFile), events.stream()
+                .map(CsvSink::format)
+                .map(String::trim)
+                .collect(Collectors.toList()));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testIncompleteFile() throws IOException {
+        write(createEvents(10));
+        final byte[] bytes = Files.readAllBytes(binaryFile);
+        Files.write(binaryFile, Arrays.copyOf(bytes, bytes.length - 4));
+
+        new BinaryReader(binaryFile).close();
+    }
+
+    @Test(expectedExceptions = IOException.class, timeOut = 10000)
+    public void testCorruptedBlock() throws IOException {
+        write(createEvents(100));
+        // halve compressed length of the first block right after the header
+        final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(binaryFile));
+        bytes.putInt(BinaryFormat.HEADER_LENGTH, bytes.getInt(BinaryFormat.HEADER_LENGTH) / 2);
+        Files.write(binaryFile, bytes.array());
+
+        try (final BinaryReader reader = new BinaryReader(binaryFile)) {
+            reader.readBlock(0);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testCorruptedFooter() throws IOException {
+        write(createEvents(100));
+        // block count in footer is far beyond the file size
+        final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(binaryFile));
+        final int footerOffset = (int) bytes.getLong(bytes.limit() - BinaryFormat.TRAILER_LENGTH);
+        bytes.putInt(footerOffset, Integer.MAX_VALUE / 12);
+        Files.write(binaryFile, bytes.array());
+
+        new BinaryReader(binaryFile).close();
+    }
+
+    private void write(final List<ImageResultEvent> events) throws IOException {
+        try (final OutputSink sink = OutputFormat.BINARY.open(binaryFile)) {
+            for (final ImageResultEvent event : events) {
+                sink.write(event);
+            }
+        }
+    }
+
+    static List<ImageResultEvent> createEvents(final int size) {
+        final List<ImageResultEvent> events = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            events.add(ImageResultEvent.builder("https://i.imgur.com/image" + (i % 7000) + ".jpg")
+                    .colors(new int[]{i * 7919 & 0xffffff, 0, 0xffffff}, new int[]{1000000 + i, 1000, i % 10})
+                    .channels(new double[]{i / 3.0, 1, 2}, new double[]{i * 0.5, 0, 100})
+                    .distinctColors(i * 13L)
+                    .luminanceHistogram(new int[]{i, i + 1, 0, 1 << 30})
+                    .build());
+        }
+        return events;
+    }
+}
@@ -0,0 +1,44 @@
+package cz.ehp.pex.output;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.testng.Assert.assertEquals;
+
+public class CsvSinkTest {
+
+    @Test(dataProvider = "convertEvent")
+    public void testFormat(final ImageResultEvent event, final String line) {
+        assertEquals(CsvSink.format(event), line);
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        final StringWriter writer = new StringWriter();
+        try (final CsvSink sink = new CsvSink(writer)) {
+            sink.write(new ImageResultEvent("http://test.url", new int[]{1, 2, 3}));
+            sink.write(new ImageResultEvent("http://other.url", new int[]{0xffffff}));
+        }
+
+        assertEquals(writer.toString(), "http://test.url,000001,000002,000003\nhttp://other.url,FFFFFF\n");
+    }
+
+    @DataProvider(name = "convertEvent")
+    public Object[][] convertEventProvider() {
+        return new Object[][]{
+                {new ImageResultEvent("http://test.url", new int[]{1, 2, 3}), "http://test.url,000001,000002,000003\n"},
+                {new ImageResultEvent("http://other.url", new int[]{0xffffff, 0xff0000, 0xff}), "http://other.url,FFFFFF,FF0000,0000FF\n"},
+                {ImageResultEvent.builder("http://all.url")
+                        .colors(new int[]{0xff}, new int[]{10})
+                        .channels(new double[]{1, 2.5, 3}, new double[]{0.125, 0, 10})
+                        .distinctColors(42)
+                        .luminanceHistogram(new int[]{7, 0, 3})
+                        .build(), "http://all.url,0000FF,10,1.00,2.50,3.00,0.13,0.00,10.00,42,7,0,3\n"},
+                {ImageResultEvent.builder("http://stats.url").distinctColors(5).build(), "http://stats.url,5\n"}
+        };
+    }
+}
@@ -0,0 +1,112 @@
+package cz.ehp.pex.output;
+
+import cz.ehp.pex.events.ImageResultEvent;
+import org.testng.Reporter;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Write and read throughput of output formats, run by mvn test -P benchmark.
+ */
+@Test(groups = "benchmark")
+public class OutputBenchmarkTest {
+    private static final int RECORDS = Integer.getInteger("benchmark.records", 500000);
+    private static final int ROUNDS = 5;
+
+    private List<ImageResultEvent> events;
+    private Path file;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        // records of default top:3 aggregator - url and colors only, so every CSV column after url is a color
+        events = BinarySinkTest.createEvents(RECORDS).stream()
+                .map(e -> ImageResultEvent.builder(e.getUrl()).colors(e.getColors(), null).build())
+                .collect(Collectors.toList());
+        file = Files.createTempFile("pex-", ".bench");
+    }
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    public void testCsvFlushPerLine() throws IOException {
+        measure("CSV flushed per line (original writer)", "write", () -> {
+            try (final BufferedWriter bw = Files.newBufferedWriter(file)) {
+                for (final ImageResultEvent event : events) {
+                    bw.write(CsvSink.format(event));
+                    bw.flush();
+                }
+            }
+        });
+    }
+
+    public void testCsv() throws IOException {
+        measure("CSV", "write", () -> write(OutputFormat.CSV));
+        measure("CSV", "read", () -> {
+            long records = 0;
+            try (final BufferedReader br = Files.newBufferedReader(file)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    final String[] values = line.split(",");
+                    final int[] colors = new int[values.length - 1];
+                    for (int i = 1; i < values.length; i++) {
+                        colors[i - 1] = Integer.parseInt(values[i], 16);
+                    }
+                    records += new ImageResultEvent(values[0], colors).getColors().length > 0 ? 1 : 0;
+                }
+            }
+            assertEquals(records, RECORDS);
+        });
+    }
+
+    public void testBinary() throws IOException {
+        measure("Binary", "write", () -> write(OutputFormat.BINARY));
+        measure("Binary", "read", () -> {
+            long records = 0;
+            try (final BinaryReader reader = new BinaryReader(file)) {
+                for (int block = 0; block < reader.getBlockCount(); block++) {
+                    records += reader.readBlock(block).size();
+                }
+            }
+            assertEquals(records, RECORDS);
+        });
+    }
+
+    private void write(final OutputFormat format) throws IOException {
+        try (final OutputSink sink = format.open(file)) {
+            for (final ImageResultEvent event : events) {
+                sink.write(event);
+            }
+        }
+    }
+
+    private void measure(final String name, final String operation, final Task task) throws IOException {
+        // first round is warm up
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round <= ROUNDS; round++) {
+            final long start = System.nanoTime();
+            task.run();
+            if (round > 0) {
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        Reporter.log(String.format("Benchmark %s %s: %d records/s, %d MB/s, file size %d bytes", name, operation,
+                RECORDS * 1_000_000_000L / best, Files.size(file) * 1000 / best, Files.size(file)), true);
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+}